@@ -0,0 +1,90 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Measures how many websocket connections per second a {@link WebSocketServer} can accept and complete the opening handshake for on loopback,<br>
+ * once with the selectorthread accepting all connections and once with one SO_REUSEPORT listener per selector loop.<br>
+ * Connections are opened in waves of <var>wave</var> to emulate the reconnect storm after a deploy or failover and are closed again after each wave.<br>
+ * Waves larger than the accept backlog of the listening sockets (50 by default) mostly measure the SYN retransmission timeout.
+ *
+ * <pre>
+ * java AcceptRateBenchmark [connections] [wave] [selectors]
+ * </pre>
+ *
+ * @see WebSocketServer#setReusePort(boolean)
+ */
+public class AcceptRateBenchmark {
+
+	static class IdleServer extends WebSocketServer {
+		public IdleServer( int decoders ) {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), decoders );
+		}
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+		}
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+			ex.printStackTrace();
+		}
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 10000;
+		int wave = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 40;
+		int cores = Runtime.getRuntime().availableProcessors();
+		int selectors = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : Math.max( 2, cores );
+
+		System.out.println( "connections=" + connections + " wave=" + wave + " selectors=" + selectors + " cores=" + cores );
+		System.out.println( "mode\t\tconn/s" );
+		for( boolean reuseport : new boolean[]{ false, true } ) {
+			IdleServer server = new IdleServer( cores );
+			server.setSelectorCount( selectors );
+			server.setReusePort( reuseport );
+			server.start();
+			while ( server.getPort() <= 0 )
+				Thread.sleep( 10 );
+
+			BenchmarkClient client = new BenchmarkClient( new InetSocketAddress( "127.0.0.1", server.getPort() ), Math.max( 1, cores / 2 ), new BenchmarkClient.Handler() {
+				@Override
+				public void onOpen( BenchmarkClient.Connection conn ) {
+				}
+				@Override
+				public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer payload ) {
+				}
+			} );
+			int opened = 0;
+			long time = System.nanoTime();
+			while ( opened < connections ) {
+				int n = Math.min( wave, connections - opened );
+				client.connect( n );
+				if( !client.awaitOpen( opened + n, 30, TimeUnit.SECONDS ) ) {
+					System.out.println( "only " + client.getOpenCount() + " connections could be opened" );
+					break;
+				}
+				List<BenchmarkClient.Connection> all = client.getConnections();
+				for( int i = opened ; i < opened + n ; i++ ) {
+					all.get( i ).close();
+				}
+				opened += n;
+			}
+			long rate = opened * 1000000000L / ( System.nanoTime() - time );
+			System.out.println( ( server.isReusePort() ? "reuseport" : "single" ) + "\t\t" + rate );
+
+			client.close();
+			server.stop( 1000 );
+		}
+		System.exit( 0 );
+	}
+}
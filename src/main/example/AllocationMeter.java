@@ -0,0 +1,43 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Reads the number of bytes the heap allocated on behalf of a thread, if the vm supports it (<code>com.sun.management.ThreadMXBean</code>).<br>
+ * Used by the benchmarks to show the allocations per operation.
+ */
+public class AllocationMeter {
+
+	private static final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	private static final Method allocatedbytes;
+	static {
+		Method m = null;
+		try {
+			m = Class.forName( "com.sun.management.ThreadMXBean" ).getMethod( "getThreadAllocatedBytes", long.class );
+			if( !Class.forName( "com.sun.management.ThreadMXBean" ).isInstance( bean ) )
+				m = null;
+		} catch ( Exception e ) {
+			// not supported by this vm
+		}
+		allocatedbytes = m;
+	}
+
+	public static boolean isSupported() {
+		return allocatedbytes != null;
+	}
+
+	/** @return the bytes allocated by <var>t</var> so far or -1 if that is not supported */
+	public static long allocatedBytes( Thread t ) {
+		if( allocatedbytes == null )
+			return -1;
+		try {
+			return (Long) allocatedbytes.invoke( bean, t.getId() );
+		} catch ( Exception e ) {
+			return -1;
+		}
+	}
+
+	public static long allocatedBytes() {
+		return allocatedBytes( Thread.currentThread() );
+	}
+}
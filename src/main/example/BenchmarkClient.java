@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.java_websocket.util.Base64;
+import org.java_websocket.util.Charsetfunctions;
+
+/**
+ * A minimal non-blocking websocket client used by the benchmarks.<br>
+ * Unlike {@link org.java_websocket.client.WebSocketClient}, which needs two threads per connection, it drives thousands of connections from a handful of selector threads so that the load generator does not become the bottleneck.<br>
+ * Frames are sent with a zero mask key, which is valid but saves the client the masking work.
+ */
+public class BenchmarkClient {
+
+	public interface Handler {
+		public void onOpen( Connection conn );
+		public void onFrame( Connection conn, int opcode, ByteBuffer payload );
+	}
+
+	public class Connection {
+		private final SocketChannel channel;
+		private final Loop loop;
+		private ByteBuffer in = ByteBuffer.allocate( 64 * 1024 );
+		private final LinkedList<ByteBuffer> out = new LinkedList<ByteBuffer>();
+		private boolean open = false;
+		/** free for use by the handler */
+		public Object attachment;
+		public long counter;
+
+		private Connection( SocketChannel channel , Loop loop ) {
+			this.channel = channel;
+			this.loop = loop;
+		}
+
+		public void sendText( String text ) {
+			send( 1, ByteBuffer.wrap( Charsetfunctions.utf8Bytes( text ) ) );
+		}
+
+		public void sendBinary( ByteBuffer payload ) {
+			send( 2, payload );
+		}
+
+		public void send( int opcode, ByteBuffer payload ) {
+			int len = payload.remaining();
+			ByteBuffer frame = ByteBuffer.allocate( len + 14 );
+			frame.put( (byte) ( 0x80 | opcode ) );
+			if( len <= 125 ) {
+				frame.put( (byte) ( 0x80 | len ) );
+			} else if( len <= 65535 ) {
+				frame.put( (byte) ( 0x80 | 126 ) );
+				frame.putShort( (short) len );
+			} else {
+				frame.put( (byte) ( 0x80 | 127 ) );
+				frame.putLong( len );
+			}
+			frame.putInt( 0 ); // mask key
+			frame.put( payload.duplicate() );
+			frame.flip();
+			synchronized ( this ) {
+				if( out.isEmpty() ) {
+					try {
+						channel.write( frame );
+					} catch ( IOException e ) {
+						close();
+						return;
+					}
+					if( !frame.hasRemaining() )
+						return;
+				}
+				out.add( frame );
+			}
+			loop.wantWrite( this );
+		}
+
+		public boolean isOpen() {
+			return open;
+		}
+
+		public void close() {
+			open = false;
+			try {
+				channel.close();
+			} catch ( IOException e ) {
+				// nothing to do
+			}
+		}
+	}
+
+	private class Loop extends Thread {
+		private final Selector selector;
+		private final Queue<Connection> registrations = new ConcurrentLinkedQueue<Connection>();
+		private final Queue<Connection> writers = new ConcurrentLinkedQueue<Connection>();
+
+		public Loop() throws IOException {
+			selector = Selector.open();
+			setDaemon( true );
+			setName( "BenchmarkClient-" + getId() );
+		}
+
+		void add( Connection c ) {
+			registrations.add( c );
+			selector.wakeup();
+		}
+
+		void wantWrite( Connection c ) {
+			writers.add( c );
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while ( !isInterrupted() ) {
+					selector.select();
+					Connection c;
+					while ( ( c = registrations.poll() ) != null ) {
+						c.channel.register( selector, SelectionKey.OP_CONNECT, c );
+					}
+					while ( ( c = writers.poll() ) != null ) {
+						SelectionKey k = c.channel.keyFor( selector );
+						if( k != null && k.isValid() )
+							k.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+					}
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while ( it.hasNext() ) {
+						SelectionKey k = it.next();
+						it.remove();
+						c = (Connection) k.attachment();
+						try {
+							if( k.isConnectable() ) {
+								c.channel.finishConnect();
+								c.channel.write( handshake() );
+								k.interestOps( SelectionKey.OP_READ );
+							} else {
+								if( k.isWritable() )
+									flush( c, k );
+								if( k.isValid() && k.isReadable() )
+									read( c );
+							}
+						} catch ( IOException e ) {
+							k.cancel();
+							c.close();
+						} catch ( CancelledKeyException e ) {
+							c.close();
+						}
+					}
+				}
+			} catch ( IOException e ) {
+				e.printStackTrace();
+			}
+		}
+
+		private void flush( Connection c, SelectionKey k ) throws IOException {
+			synchronized ( c ) {
+				while ( !c.out.isEmpty() ) {
+					ByteBuffer b = c.out.getFirst();
+					c.channel.write( b );
+					if( b.hasRemaining() )
+						return;
+					c.out.removeFirst();
+				}
+				k.interestOps( SelectionKey.OP_READ );
+			}
+		}
+
+		private void read( Connection c ) throws IOException {
+			if( !c.in.hasRemaining() ) {
+				ByteBuffer bigger = ByteBuffer.allocate( c.in.capacity() * 2 );
+				c.in.flip();
+				bigger.put( c.in );
+				c.in = bigger;
+			}
+			if( c.channel.read( c.in ) == -1 ) {
+				c.close();
+				return;
+			}
+			c.in.flip();
+			if( !c.open ) {
+				int end = indexOfHeaderEnd( c.in );
+				if( end == -1 ) {
+					c.in.compact();
+					return;
+				}
+				c.in.position( end );
+				c.open = true;
+				opened.incrementAndGet();
+				handler.onOpen( c );
+			}
+			while ( c.in.remaining() >= 2 ) {
+				int start = c.in.position();
+				int opcode = c.in.get( start ) & 0x0F;
+				int len = c.in.get( start + 1 ) & 0x7F;
+				int header = 2;
+				if( len == 126 ) {
+					if( c.in.remaining() < 4 )
+						break;
+					len = c.in.getShort( start + 2 ) & 0xFFFF;
+					header = 4;
+				} else if( len == 127 ) {
+					if( c.in.remaining() < 10 )
+						break;
+					len = (int) c.in.getLong( start + 2 );
+					header = 10;
+				}
+				if( c.in.remaining() < header + len ) {
+					if( c.in.capacity() < header + len ) {
+						ByteBuffer bigger = ByteBuffer.allocate( header + len );
+						bigger.put( c.in );
+						c.in = bigger;
+						return;
+					}
+					break;
+				}
+				ByteBuffer payload = c.in.duplicate();
+				payload.position( start + header );
+				payload.limit( start + header + len );
+				c.in.position( start + header + len );
+				handler.onFrame( c, opcode, payload );
+			}
+			c.in.compact();
+		}
+	}
+
+	private final InetSocketAddress address;
+	private final Handler handler;
+	private final List<Loop> loops = new ArrayList<Loop>();
+	private final List<Connection> connections = new ArrayList<Connection>();
+	private final AtomicInteger opened = new AtomicInteger();
+
+	public BenchmarkClient( InetSocketAddress address , int threads , Handler handler ) throws IOException {
+		this.address = address;
+		this.handler = handler;
+		for( int i = 0 ; i < threads ; i++ ) {
+			Loop l = new Loop();
+			loops.add( l );
+			l.start();
+		}
+	}
+
+	/** Initiates <var>count</var> additional connections. */
+	public void connect( int count ) throws IOException {
+		for( int i = 0 ; i < count ; i++ ) {
+			SocketChannel ch = SocketChannel.open();
+			ch.configureBlocking( false );
+			ch.socket().setTcpNoDelay( true );
+			ch.connect( address );
+			Loop l = loops.get( connections.size() % loops.size() );
+			Connection c = new Connection( ch, l );
+			connections.add( c );
+			l.add( c );
+		}
+	}
+
+	/** Waits until <var>count</var> connections completed their opening handshake. */
+	public boolean awaitOpen( int count, long timeout, TimeUnit unit ) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos( timeout );
+		while ( opened.get() < count ) {
+			if( System.nanoTime() > deadline )
+				return false;
+			Thread.sleep( 5 );
+		}
+		return true;
+	}
+
+	public int getOpenCount() {
+		return opened.get();
+	}
+
+	public List<Connection> getConnections() {
+		return connections;
+	}
+
+	public void close() {
+		for( Connection c : connections ) {
+			c.close();
+		}
+		for( Loop l : loops ) {
+			l.interrupt();
+		}
+	}
+
+	private ByteBuffer handshake() {
+		byte[] key = new byte[ 16 ];
+		new java.util.Random().nextBytes( key );
+		String request = "GET / HTTP/1.1\r\nHost: " + address.getHostName() + ":" + address.getPort() + "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Version: 13\r\nSec-WebSocket-Key: " + Base64.encodeBytes( key ) + "\r\n\r\n";
+		return ByteBuffer.wrap( Charsetfunctions.asciiBytes( request ) );
+	}
+
+	private static int indexOfHeaderEnd( ByteBuffer b ) {
+		for( int i = b.position() ; i + 3 < b.limit() ; i++ ) {
+			if( b.get( i ) == '\r' && b.get( i + 1 ) == '\n' && b.get( i + 2 ) == '\r' && b.get( i + 3 ) == '\n' )
+				return i + 4;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,120 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Measures the throughput of a server whose handlers block, e.g. on a database, in the ways callbacks can be run:
+ * <ul>
+ * <li><b>workers</b>: on the {@link WebSocketServer.WebSocketWorker}s, one per core; a blocked handler stalls all connections of its worker</li>
+ * <li><b>pool</b>: on a fixed pool of platform threads via {@link WebSocketServer#setApplicationExecutor(java.util.concurrent.Executor, int)}</li>
+ * <li><b>virtual</b>: on virtual threads via {@link WebSocketServer#setVirtualThreadCallbacks(int)}; skipped if the JVM does not support them</li>
+ * </ul>
+ * Every client connection sends a request, waits for the response and sends the next one. The handler sleeps for the given time before it responds.
+ *
+ * <pre>
+ * java BlockingHandlerBenchmark [connections] [blockmillis] [seconds] [poolthreads]
+ * </pre>
+ */
+public class BlockingHandlerBenchmark {
+
+	static final AtomicLong responses = new AtomicLong();
+
+	static class Server extends WebSocketServer {
+		final long block;
+
+		Server( int decoders , long block ) {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), decoders );
+			this.block = block;
+		}
+
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+			try {
+				Thread.sleep( block );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+			conn.send( message );
+		}
+
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+		}
+	}
+
+	static void run( String mode, int connections, long block, int seconds, int poolthreads ) throws Exception {
+		Server server = new Server( Runtime.getRuntime().availableProcessors(), block );
+		ExecutorService pool = null;
+		if( mode.equals( "pool" ) ) {
+			pool = Executors.newFixedThreadPool( poolthreads );
+			server.setApplicationExecutor( pool, 64 );
+		} else if( mode.equals( "virtual" ) ) {
+			server.setVirtualThreadCallbacks( 64 );
+		}
+		server.start();
+		while ( server.getPort() <= 0 )
+			Thread.sleep( 10 );
+
+		BenchmarkClient client = new BenchmarkClient( new InetSocketAddress( "127.0.0.1", server.getPort() ), 2, new BenchmarkClient.Handler() {
+			@Override
+			public void onOpen( BenchmarkClient.Connection conn ) {
+			}
+
+			@Override
+			public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer payload ) {
+				responses.incrementAndGet();
+				conn.sendText( "request" );
+			}
+		} );
+		client.connect( connections );
+		if( !client.awaitOpen( connections, 30, TimeUnit.SECONDS ) )
+			System.out.println( "only " + client.getOpenCount() + " of " + connections + " connections opened" );
+
+		responses.set( 0 );
+		long start = System.nanoTime();
+		for( BenchmarkClient.Connection conn : client.getConnections() )
+			conn.sendText( "request" );
+		Thread.sleep( TimeUnit.SECONDS.toMillis( seconds ) );
+		long count = responses.get();
+		long time = System.nanoTime() - start;
+
+		// the ideal is every connection completing a request per blocking period
+		double ideal = connections * ( 1000.0 / Math.max( 1, block ) );
+		System.out.printf( "%s\t%.0f\t\t%.0f%%%n", mode, count / ( time / 1e9 ), 100 * count / ( time / 1e9 ) / ideal );
+		client.close();
+		server.stop( 1000 );
+		if( pool != null )
+			pool.shutdown();
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1000;
+		long block = args.length > 1 ? Long.parseLong( args[ 1 ] ) : 20;
+		int seconds = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 10;
+		int poolthreads = args.length > 3 ? Integer.parseInt( args[ 3 ] ) : 200;
+		System.out.println( "connections=" + connections + " block=" + block + "ms workers=" + Runtime.getRuntime().availableProcessors() + " poolthreads=" + poolthreads );
+		System.out.println( "mode\trequests/s\tof ideal" );
+		run( "workers", connections, block, seconds, poolthreads );
+		run( "pool", connections, block, seconds, poolthreads );
+		if( WebSocketServer.isVirtualThreadSupported() )
+			run( "virtual", connections, block, seconds, poolthreads );
+		else
+			System.out.println( "virtual\tnot supported by java " + System.getProperty( "java.version" ) );
+		System.exit( 0 );
+	}
+}
@@ -0,0 +1,109 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Compares the cost of sending one message to many connections with {@link WebSocket#send(String)} per recipient and with {@link WebSocketServer#broadcast(String, Collection)}.<br>
+ * Reports the cpu time and the bytes the publishing thread spends per broadcast, and the time until every recipient decoded the message. Every recipient needs two file descriptors in this process, so the open file limit has to be raised for 10000 recipients.
+ *
+ * <pre>
+ * java -Xmx1g BroadcastBenchmark [recipients] [messagesize] [broadcasts]
+ * </pre>
+ */
+public class BroadcastBenchmark {
+
+	static class Server extends WebSocketServer {
+		public Server() {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), 1 );
+		}
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+		}
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+			ex.printStackTrace();
+		}
+	}
+
+	static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	public static void main( String[] args ) throws Exception {
+		int recipients = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 10000;
+		int size = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 512;
+		int broadcasts = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 50;
+
+		Server server = new Server();
+		server.start();
+		while ( server.getPort() <= 0 )
+			Thread.sleep( 10 );
+		final AtomicLong received = new AtomicLong();
+		BenchmarkClient client = new BenchmarkClient( new InetSocketAddress( "127.0.0.1", server.getPort() ), 1, new BenchmarkClient.Handler() {
+			@Override
+			public void onOpen( BenchmarkClient.Connection conn ) {
+			}
+			@Override
+			public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer data ) {
+				received.incrementAndGet();
+			}
+		} );
+		client.connect( recipients );
+		if( !client.awaitOpen( recipients, 60, TimeUnit.SECONDS ) )
+			System.out.println( "only " + client.getOpenCount() + " recipients could be opened" );
+		while ( server.connections().size() < client.getOpenCount() )
+			Thread.sleep( 10 );
+		List<WebSocket> subs;
+		synchronized ( server.connections() ) {
+			subs = new ArrayList<WebSocket>( server.connections() );
+		}
+
+		char[] chars = new char[ size ];
+		Arrays.fill( chars, 'x' );
+		String message = new String( chars );
+
+		System.out.println( "recipients=" + subs.size() + " size=" + size + " cores=" + Runtime.getRuntime().availableProcessors() );
+		System.out.println( "variant\t\tcpu us/broadcast\tbytes/broadcast\tbytes/recipient\tdelivery ms" );
+		for( int round = 0 ; round < 3 ; round++ ) {
+			for( int variant = 0 ; variant < 2 ; variant++ ) {
+				long cpu = 0, alloc = 0, wall = 0;
+				for( int b = 0 ; b < broadcasts ; b++ ) {
+					long target = received.get() + subs.size();
+					long start = System.nanoTime();
+					long c = threads.getCurrentThreadCpuTime();
+					long a = AllocationMeter.allocatedBytes();
+					if( variant == 0 ) {
+						for( WebSocket ws : subs )
+							ws.send( message );
+					} else {
+						server.broadcast( message, subs );
+					}
+					alloc += AllocationMeter.allocatedBytes() - a;
+					cpu += threads.getCurrentThreadCpuTime() - c;
+					while ( received.get() < target )
+						Thread.sleep( 1 );
+					wall += System.nanoTime() - start;
+				}
+				System.out.println( ( variant == 0 ? "send\t" : "broadcast" ) + "\t" + cpu / broadcasts / 1000 + "\t\t\t" + alloc / broadcasts + "\t\t" + alloc / broadcasts / subs.size() + "\t\t" + wall / broadcasts / 1000000 );
+			}
+		}
+		client.close();
+		server.stop( 1000 );
+		System.exit( 0 );
+	}
+}
@@ -0,0 +1,55 @@
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.java_websocket.util.LongObjectMap;
+
+/**
+ * Compares looking up objects by a numeric session id in a <code>ConcurrentHashMap&lt;Long, V&gt;</code> and in a {@link LongObjectMap}, the map behind {@link org.java_websocket.server.WebSocketServer#getConnection(long)}.<br>
+ * Ids are handed out sequentially and looked up in random order, like a routing layer addressing connections. Ids above 127 are not cached by {@link Long#valueOf(long)}, so every lookup in the <code>ConcurrentHashMap</code> boxes its key.
+ *
+ * <pre>
+ * java ConnectionLookupBenchmark [connections] [lookups]
+ * </pre>
+ */
+public class ConnectionLookupBenchmark {
+
+	static volatile Object sink;
+
+	public static void main( String[] args ) {
+		int connections = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100000;
+		int lookups = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 10000000;
+
+		ConcurrentHashMap<Long,Object> boxed = new ConcurrentHashMap<Long,Object>();
+		LongObjectMap<Object> primitive = new LongObjectMap<Object>();
+		for( long id = 1 ; id <= connections ; id++ ) {
+			Object conn = new Object();
+			boxed.put( id, conn );
+			primitive.put( id, conn );
+		}
+		long[] ids = new long[ 1 << 16 ];
+		Random r = new Random( 1 );
+		for( int i = 0 ; i < ids.length ; i++ ) {
+			ids[ i ] = 1 + r.nextInt( connections );
+		}
+
+		System.out.println( "connections=" + connections + " lookups=" + lookups );
+		System.out.println( "map\t\t\tns/lookup\tbytes/lookup" );
+		for( int round = 0 ; round < 3 ; round++ ) {
+			long a = AllocationMeter.allocatedBytes();
+			long start = System.nanoTime();
+			for( int i = 0 ; i < lookups ; i++ ) {
+				sink = boxed.get( ids[ i & ( ids.length - 1 ) ] );
+			}
+			long time = System.nanoTime() - start;
+			System.out.printf( "ConcurrentHashMap<Long>\t%.1f\t\t%.1f%n", time / (double) lookups, ( AllocationMeter.allocatedBytes() - a ) / (double) lookups );
+
+			a = AllocationMeter.allocatedBytes();
+			start = System.nanoTime();
+			for( int i = 0 ; i < lookups ; i++ ) {
+				sink = primitive.get( ids[ i & ( ids.length - 1 ) ] );
+			}
+			time = System.nanoTime() - start;
+			System.out.printf( "LongObjectMap\t\t%.1f\t\t%.1f%n", time / (double) lookups, ( AllocationMeter.allocatedBytes() - a ) / (double) lookups );
+		}
+	}
+}
@@ -0,0 +1,127 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Measures how the cost of a broadcast scales with the number of recipients, from 1000 up to 100000.<br>
+ * For every step the same message is sent with {@link WebSocket#send(String)} per recipient, with {@link WebSocketServer#broadcast(String, Collection)} on the calling thread alone and with a {@link WebSocketServer#setBroadcastExecutor(java.util.concurrent.Executor, int) broadcast executor}. Reported are the time the publishing thread spends in the call and the time until every recipient decoded the message.<br>
+ * Every recipient needs two file descriptors in this process, so the open file limit has to be raised accordingly. The benchmark stops at the first step for which not all connections could be opened.
+ *
+ * <pre>
+ * java -Xmx2g FanoutBenchmark [maxrecipients] [messagesize] [broadcasts] [chunksize]
+ * </pre>
+ */
+public class FanoutBenchmark {
+
+	static class Server extends WebSocketServer {
+		public Server() {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), 1 );
+		}
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+		}
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+			ex.printStackTrace();
+		}
+	}
+
+	static final int[] STEPS = { 1000, 2000, 5000, 10000, 20000, 50000, 100000 };
+
+	public static void main( String[] args ) throws Exception {
+		int max = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100000;
+		int size = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 256;
+		int broadcasts = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 20;
+		int chunksize = args.length > 3 ? Integer.parseInt( args[ 3 ] ) : 1024;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		Server server = new Server();
+		server.setSelectorCount( cores );
+		server.start();
+		while ( server.getPort() <= 0 )
+			Thread.sleep( 10 );
+		ExecutorService pool = Executors.newFixedThreadPool( cores );
+		final AtomicLong received = new AtomicLong();
+		BenchmarkClient client = new BenchmarkClient( new InetSocketAddress( "127.0.0.1", server.getPort() ), cores, new BenchmarkClient.Handler() {
+			@Override
+			public void onOpen( BenchmarkClient.Connection conn ) {
+			}
+			@Override
+			public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer data ) {
+				received.incrementAndGet();
+			}
+		} );
+
+		char[] chars = new char[ size ];
+		Arrays.fill( chars, 'x' );
+		String message = new String( chars );
+
+		System.out.println( "size=" + size + " chunksize=" + chunksize + " cores=" + cores );
+		System.out.println( "recipients\tvariant\t\tcall us\t\tdelivery ms" );
+		for( int step : STEPS ) {
+			if( step > max )
+				break;
+			// connecting in batches keeps the accept backlog from overflowing
+			while ( client.getConnections().size() < step ) {
+				int batch = Math.min( 500, step - client.getConnections().size() );
+				client.connect( batch );
+				if( !client.awaitOpen( client.getConnections().size(), 30, TimeUnit.SECONDS ) )
+					break;
+			}
+			if( client.getOpenCount() < step ) {
+				System.out.println( "only " + client.getOpenCount() + " of " + step + " recipients could be opened, stopping" );
+				break;
+			}
+			while ( server.connections().size() < step )
+				Thread.sleep( 10 );
+			List<WebSocket> subs;
+			synchronized ( server.connections() ) {
+				subs = new ArrayList<WebSocket>( server.connections() );
+			}
+			for( int variant = 0 ; variant < 3 ; variant++ ) {
+				server.setBroadcastExecutor( variant == 2 ? pool : null, chunksize );
+				long call = 0, wall = 0;
+				for( int b = -broadcasts / 4 ; b < broadcasts ; b++ ) { // the negative rounds are warm up
+					long target = received.get() + subs.size();
+					long start = System.nanoTime();
+					if( variant == 0 ) {
+						for( WebSocket ws : subs )
+							ws.send( message );
+					} else {
+						server.broadcast( message, subs );
+					}
+					long returned = System.nanoTime();
+					while ( received.get() < target )
+						Thread.sleep( 1 );
+					if( b >= 0 ) {
+						call += returned - start;
+						wall += System.nanoTime() - start;
+					}
+				}
+				String name = variant == 0 ? "send\t" : variant == 1 ? "broadcast" : "parallel";
+				System.out.println( subs.size() + "\t\t" + name + "\t" + call / broadcasts / 1000 + "\t\t" + wall / broadcasts / 1000000 );
+			}
+		}
+		client.close();
+		pool.shutdown();
+		server.stop( 1000 );
+		System.exit( 0 );
+	}
+}
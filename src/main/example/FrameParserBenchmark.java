@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.Framedata.Opcode;
+import org.java_websocket.framing.FramedataImpl1;
+
+/**
+ * Measures how fast {@link Draft_17#translateFrame(ByteBuffer)} parses masked frames when they arrive in segments of a given size, as they do from a connection with small TCP segments.<br>
+ * A stream of frames is cut into segments which are fed to the parser one after another, so most frames start in one segment and end in a later one. Segments of 0 bytes mean that every segment holds the whole stream.<br>
+ * Reports the nanoseconds and the bytes allocated per frame.
+ *
+ * <pre>
+ * java FrameParserBenchmark [payloadsize] [frames] [rounds]
+ * </pre>
+ */
+public class FrameParserBenchmark {
+
+	static long sink;
+
+	static ByteBuffer stream( int payloadsize, int frames ) {
+		Draft_17 client = new Draft_17();
+		client.setParseMode( Role.CLIENT );
+		ByteBuffer stream = null;
+		for( int i = 0 ; i < frames ; i++ ) {
+			FramedataImpl1 f = new FramedataImpl1( Opcode.BINARY );
+			f.setFin( true );
+			try {
+				f.setPayload( ByteBuffer.allocate( payloadsize ) );
+			} catch ( Exception e ) {
+				throw new RuntimeException( e );
+			}
+			ByteBuffer frame = client.createBinaryFrame( f );
+			if( stream == null )
+				stream = ByteBuffer.allocateDirect( frame.remaining() * frames );
+			stream.put( frame );
+		}
+		stream.flip();
+		return stream;
+	}
+
+	static void run( ByteBuffer stream, int frames, int segment, int repetitions ) throws Exception {
+		Draft_17 server = new Draft_17();
+		int size = segment == 0 ? stream.limit() : segment;
+		long alloc = AllocationMeter.allocatedBytes();
+		long time = System.nanoTime();
+		long parsed = 0;
+		for( int r = 0 ; r < repetitions ; r++ ) {
+			for( int start = 0 ; start < stream.limit() ; start += size ) {
+				ByteBuffer piece = stream.duplicate();
+				piece.position( start );
+				piece.limit( Math.min( stream.limit(), start + size ) );
+				List<Framedata> list = server.translateFrame( piece );
+				parsed += list.size();
+				for( Framedata f : list )
+					sink += f.getPayloadData().remaining();
+			}
+		}
+		time = System.nanoTime() - time;
+		alloc = AllocationMeter.allocatedBytes() - alloc;
+		if( parsed != (long) frames * repetitions )
+			throw new IllegalStateException( "parsed " + parsed + " of " + frames * repetitions + " frames" );
+		System.out.printf( "%s\t%.1f\t\t%s%n", segment == 0 ? "whole" : String.valueOf( segment ), time / (double) parsed, AllocationMeter.isSupported() ? String.format( "%.1f", alloc / (double) parsed ) : "n/a" );
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int payloadsize = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 64;
+		int frames = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 10000;
+		int rounds = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 3;
+		ByteBuffer stream = stream( payloadsize, frames );
+		System.out.println( "payload=" + payloadsize + " frames=" + frames + " streambytes=" + stream.limit() );
+		for( int r = 0 ; r < rounds ; r++ ) {
+			System.out.println( "round " + r + "\nsegment\tns/frame\tbytes/frame" );
+			for( int segment : new int[]{ 0, 1460, 536, 100, 7 } ) {
+				run( stream, frames, segment, 50 );
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.SocketChannelIOHelper;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketAdapter;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Counts the write calls the server issues per delivered message in a pub/sub workload.<br>
+ * A publisher thread sends bursts of small text messages to every subscriber. The server channels are wrapped to count the calls of {@link ByteChannel#write(ByteBuffer)} and {@link GatheringByteChannel#write(ByteBuffer[], int, int)}, each of which is one write syscall on a plain socket.<br>
+ * The run with {@link SocketChannelIOHelper#GATHER_BUFFERS} set to 1 shows the former behavior of writing the outQueue one buffer at a time.
+ *
+ * <pre>
+ * java GatheringWriteBenchmark [subscribers] [burst] [seconds]
+ * </pre>
+ */
+public class GatheringWriteBenchmark {
+
+	static final AtomicLong writes = new AtomicLong();
+	static final AtomicLong writtenbytes = new AtomicLong();
+
+	static class CountingChannel implements ByteChannel, GatheringByteChannel {
+		private final SocketChannel channel;
+		CountingChannel( SocketChannel channel ) {
+			this.channel = channel;
+		}
+		@Override
+		public int read( ByteBuffer dst ) throws IOException {
+			return channel.read( dst );
+		}
+		@Override
+		public int write( ByteBuffer src ) throws IOException {
+			writes.incrementAndGet();
+			int n = channel.write( src );
+			writtenbytes.addAndGet( n );
+			return n;
+		}
+		@Override
+		public long write( ByteBuffer[] srcs, int offset, int length ) throws IOException {
+			writes.incrementAndGet();
+			long n = channel.write( srcs, offset, length );
+			writtenbytes.addAndGet( n );
+			return n;
+		}
+		@Override
+		public long write( ByteBuffer[] srcs ) throws IOException {
+			return write( srcs, 0, srcs.length );
+		}
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	static class CountingFactory implements WebSocketServer.WebSocketServerFactory {
+		@Override
+		public WebSocketImpl createWebSocket( WebSocketAdapter a, Draft d, Socket s ) {
+			return new WebSocketImpl( a, d );
+		}
+		@Override
+		public WebSocketImpl createWebSocket( WebSocketAdapter a, List<Draft> d, Socket s ) {
+			return new WebSocketImpl( a, d );
+		}
+		@Override
+		public ByteChannel wrapChannel( SocketChannel channel, SelectionKey key ) {
+			return new CountingChannel( channel );
+		}
+	}
+
+	static class PubSubServer extends WebSocketServer {
+		public PubSubServer() {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), 1 );
+			setWebSocketFactory( new CountingFactory() );
+		}
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+		}
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+			ex.printStackTrace();
+		}
+	}
+
+	static void run( int gather, int subscribers, final int burst, int seconds ) throws Exception {
+		SocketChannelIOHelper.GATHER_BUFFERS = gather;
+		final PubSubServer server = new PubSubServer();
+		server.start();
+		while ( server.getPort() <= 0 )
+			Thread.sleep( 10 );
+
+		final AtomicLong received = new AtomicLong();
+		BenchmarkClient client = new BenchmarkClient( new InetSocketAddress( "127.0.0.1", server.getPort() ), 1, new BenchmarkClient.Handler() {
+			@Override
+			public void onOpen( BenchmarkClient.Connection conn ) {
+			}
+			@Override
+			public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer data ) {
+				received.incrementAndGet();
+			}
+		} );
+		client.connect( subscribers );
+		if( !client.awaitOpen( subscribers, 30, TimeUnit.SECONDS ) )
+			System.out.println( "only " + client.getOpenCount() + " subscribers could be opened" );
+		while ( server.connections().size() < subscribers )
+			Thread.sleep( 10 );
+
+		final long end = System.nanoTime() + seconds * 1000000000L;
+		Thread publisher = new Thread() {
+			@Override
+			public void run() {
+				List<WebSocket> subs;
+				Collection<WebSocket> c = server.connections();
+				synchronized ( c ) {
+					subs = new ArrayList<WebSocket>( c );
+				}
+				int seq = 0;
+				try {
+					while ( System.nanoTime() < end ) {
+						for( int i = 0 ; i < burst ; i++ ) {
+							String msg = "{\"topic\":\"prices\",\"seq\":" + seq++ + "}";
+							for( WebSocket s : subs )
+								s.send( msg );
+						}
+						Thread.sleep( 1 );
+					}
+				} catch ( InterruptedException e ) {
+				}
+			}
+		};
+		writes.set( 0 );
+		writtenbytes.set( 0 );
+		long start = received.get();
+		long time = System.nanoTime();
+		publisher.start();
+		publisher.join();
+		Thread.sleep( 500 ); // let the queues drain
+		long messages = received.get() - start;
+		time = System.nanoTime() - time;
+		long w = writes.get();
+		System.out.printf( "%d\t%d\t\t%d\t\t%.3f\t\t\t%d%n", gather, messages * 1000000000L / time, w, w / (double) Math.max( 1, messages ), writtenbytes.get() / Math.max( 1, w ) );
+
+		client.close();
+		server.stop( 1000 );
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int subscribers = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100;
+		int burst = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 20;
+		int seconds = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 5;
+		System.out.println( "subscribers=" + subscribers + " burst=" + burst + " cores=" + Runtime.getRuntime().availableProcessors() );
+		System.out.println( "gather\tmsgs/s\t\twrites\t\twrites/message\t\tbytes/write" );
+		run( 1, subscribers, burst, seconds );
+		run( 64, subscribers, burst, seconds );
+		System.exit( 0 );
+	}
+}
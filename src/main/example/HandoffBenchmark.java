@@ -0,0 +1,138 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.java_websocket.util.MpmcArrayQueue;
+import org.java_websocket.util.SpscArrayQueue;
+
+/**
+ * Compares the cost of handing a received buffer from the selector thread to a decoder thread.<br>
+ * Like the server, every handoff consists of putting the buffer into the inQueue of a connection and the connection into the queue of its worker.<br>
+ * The buffers are spread round robin over {@link #CONNECTIONS} connections which share one worker.
+ * <ul>
+ * <li><b>blocking</b>: two LinkedBlockingQueues like before; the worker blocks in take()</li>
+ * <li><b>ring+park</b>: an SpscArrayQueue and an MpmcArrayQueue; the worker parks right away when idle (the server default)</li>
+ * <li><b>ring+spin</b>: the same rings but the worker spins and yields before it parks</li>
+ * </ul>
+ * Reports the nanoseconds and the bytes the producer allocated per handoff.
+ *
+ * <pre>
+ * java HandoffBenchmark [handoffs] [rounds]
+ * </pre>
+ */
+public class HandoffBenchmark {
+
+	static final ByteBuffer BUFFER = ByteBuffer.allocate( 16 );
+	static final int CONNECTIONS = 64;
+
+	static abstract class Handoff {
+		final String name;
+		volatile Thread consumer;
+		Handoff( String name ) {
+			this.name = name;
+		}
+		abstract void put( int conn ) throws InterruptedException;
+		abstract void take() throws InterruptedException;
+	}
+
+	static class Blocking extends Handoff {
+		final List<BlockingQueue<ByteBuffer>> inQueues = new ArrayList<BlockingQueue<ByteBuffer>>();
+		final BlockingQueue<BlockingQueue<ByteBuffer>> worker = new LinkedBlockingQueue<BlockingQueue<ByteBuffer>>();
+		Blocking() {
+			super( "blocking" );
+			for( int i = 0 ; i < CONNECTIONS ; i++ )
+				inQueues.add( new LinkedBlockingQueue<ByteBuffer>() );
+		}
+		@Override
+		void put( int conn ) throws InterruptedException {
+			BlockingQueue<ByteBuffer> inQueue = inQueues.get( conn );
+			inQueue.put( BUFFER );
+			worker.put( inQueue );
+		}
+		@Override
+		void take() throws InterruptedException {
+			worker.take().poll();
+		}
+	}
+
+	static class Ring extends Handoff {
+		final List<SpscArrayQueue<ByteBuffer>> inQueues = new ArrayList<SpscArrayQueue<ByteBuffer>>();
+		final MpmcArrayQueue<SpscArrayQueue<ByteBuffer>> worker = new MpmcArrayQueue<SpscArrayQueue<ByteBuffer>>( 4096 );
+		final int spins, yields;
+		final AtomicBoolean waiting = new AtomicBoolean();
+		Ring( String name , int spins , int yields ) {
+			super( name );
+			this.spins = spins;
+			this.yields = yields;
+			for( int i = 0 ; i < CONNECTIONS ; i++ )
+				inQueues.add( new SpscArrayQueue<ByteBuffer>( 16 ) );
+		}
+		@Override
+		void put( int conn ) {
+			SpscArrayQueue<ByteBuffer> inQueue = inQueues.get( conn );
+			while ( !inQueue.offer( BUFFER ) ) // the server would pause reading instead
+				Thread.yield();
+			while ( !worker.offer( inQueue ) )
+				Thread.yield();
+			if( waiting.get() && waiting.compareAndSet( true, false ) )
+				LockSupport.unpark( consumer );
+		}
+		@Override
+		void take() {
+			int round = 0;
+			SpscArrayQueue<ByteBuffer> inQueue;
+			while ( ( inQueue = worker.poll() ) == null ) {
+				if( round < spins ) {
+				} else if( round < spins + yields ) {
+					Thread.yield();
+				} else {
+					waiting.set( true );
+					if( worker.isEmpty() )
+						LockSupport.park( this );
+					waiting.set( false );
+				}
+				round++;
+			}
+			inQueue.poll();
+		}
+	}
+
+	static void run( final Handoff h, final int count ) throws Exception {
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for( int i = 0 ; i < count ; i++ )
+						h.take();
+				} catch ( InterruptedException e ) {
+				}
+			}
+		};
+		h.consumer = consumer;
+		consumer.start();
+		long alloc = AllocationMeter.allocatedBytes();
+		long time = System.nanoTime();
+		for( int i = 0 ; i < count ; i++ )
+			h.put( i % CONNECTIONS );
+		consumer.join();
+		time = System.nanoTime() - time;
+		alloc = AllocationMeter.allocatedBytes() - alloc;
+		System.out.println( h.name + "\t" + ( time / count ) + "\t\t" + ( AllocationMeter.isSupported() ? String.valueOf( alloc / count ) : "n/a" ) );
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 2000000;
+		int rounds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 3;
+		System.out.println( "handoffs=" + count + " cores=" + Runtime.getRuntime().availableProcessors() );
+		for( int r = 0 ; r < rounds ; r++ ) {
+			System.out.println( "round " + r + "\nvariant\t\tns/handoff\tbytes/handoff" );
+			run( new Blocking(), count );
+			run( new Ring( "ring+park", 0, 0 ), count );
+			run( new Ring( "ring+spin", 1000, 100 ), count );
+		}
+	}
+}
@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.util.HashedTimingWheel;
+
+/**
+ * Measures the cost of tracking idle timeouts the way the selector loops do it, for a large number of connections.<br>
+ * Every simulated connection records the time of its reads in a field and sits in a {@link HashedTimingWheel} at its deadline. When the wheel hands out a connection whose deadline moved because it has been active meanwhile, it is scheduled again. A fraction of the connections stays silent and expires.<br>
+ * The simulation runs on a virtual clock, so the reported times are the pure processing cost of one tick and of one read.
+ *
+ * <pre>
+ * java IdleTimeoutBenchmark [connections] [timeoutseconds] [simulatedseconds]
+ * </pre>
+ */
+public class IdleTimeoutBenchmark {
+
+	static class Conn {
+		long lastread;
+		boolean closed;
+	}
+
+	public static void main( String[] args ) {
+		int connections = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100000;
+		long timeout = TimeUnit.SECONDS.toNanos( args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 30 );
+		int seconds = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 600;
+		long tick = Math.min( TimeUnit.SECONDS.toNanos( 1 ), timeout / 8 );
+
+		HashedTimingWheel<Conn> wheel = new HashedTimingWheel<Conn>( tick, TimeUnit.NANOSECONDS, 512 );
+		Conn[] conns = new Conn[ connections ];
+		long now = System.nanoTime();
+		for( int i = 0 ; i < connections ; i++ ) {
+			conns[ i ] = new Conn();
+			conns[ i ].lastread = now;
+			wheel.schedule( conns[ i ], now + timeout );
+		}
+
+		Random r = new Random( 1 );
+		List<Conn> expired = new ArrayList<Conn>();
+		long reads = 0, readtime = 0, ticks = 0, ticktime = 0, rescheduled = 0, closed = 0, maxtick = 0;
+		long end = now + TimeUnit.SECONDS.toNanos( seconds );
+		while ( now < end ) {
+			now += tick;
+			// every connection but the silent 1% reads about once per second
+			int active = (int) ( connections * 0.99 * tick / TimeUnit.SECONDS.toNanos( 1 ) );
+			long start = System.nanoTime();
+			for( int i = 0 ; i < active ; i++ ) {
+				Conn c = conns[ r.nextInt( connections - connections / 100 ) ];
+				c.lastread = now;
+			}
+			readtime += System.nanoTime() - start;
+			reads += active;
+
+			start = System.nanoTime();
+			wheel.expire( now, expired );
+			for( int i = 0 ; i < expired.size() ; i++ ) {
+				Conn c = expired.get( i );
+				long deadline = c.lastread + timeout;
+				if( deadline - now > 0 ) {
+					wheel.schedule( c, deadline );
+					rescheduled++;
+				} else {
+					c.closed = true;
+					closed++;
+				}
+			}
+			expired.clear();
+			long t = System.nanoTime() - start;
+			ticktime += t;
+			maxtick = Math.max( maxtick, t );
+			ticks++;
+		}
+		System.out.println( "connections=" + connections + " timeout=" + TimeUnit.NANOSECONDS.toSeconds( timeout ) + "s tick=" + TimeUnit.NANOSECONDS.toMillis( tick ) + "ms simulated=" + seconds + "s" );
+		System.out.printf( "ns/read\t\t%.1f%n", readtime / (double) reads );
+		System.out.printf( "us/tick\t\t%.1f (max %d)%n", ticktime / (double) ticks / 1000, maxtick / 1000 );
+		System.out.printf( "rescheduled/s\t%d%n", rescheduled / seconds );
+		System.out.println( "closed\t\t" + closed + " of " + connections / 100 + " silent" );
+	}
+}
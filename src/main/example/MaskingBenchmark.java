@@ -0,0 +1,82 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.java_websocket.drafts.Draft_10;
+
+/**
+ * Compares unmasking payloads in place one byte at a time, like Draft_10 used to, with {@link Draft_10#mask(ByteBuffer, int, int, int)}, which processes eight bytes at a time.<br>
+ * Runs for payloads of 64 bytes, 4 KiB and 1 MiB in heap and direct buffers and reports the nanoseconds per payload and the throughput. Before measuring, both variants are checked to produce the same bytes for all offsets and lengths up to 40 in either byte order.
+ *
+ * <pre>
+ * java MaskingBenchmark [megabytes per run] [rounds]
+ * </pre>
+ */
+public class MaskingBenchmark {
+
+	static void maskBytewise( ByteBuffer buffer, int offset, int length, byte[] maskkey ) {
+		for( int i = 0 ; i < length ; i++ ) {
+			buffer.put( offset + i, (byte) ( buffer.get( offset + i ) ^ maskkey[ i % 4 ] ) );
+		}
+	}
+
+	static byte[] keyBytes( int maskkey ) {
+		return ByteBuffer.allocate( 4 ).putInt( maskkey ).array();
+	}
+
+	static void verify() {
+		Random r = new Random( 1 );
+		for( int direct = 0 ; direct < 2 ; direct++ ) {
+			for( ByteOrder order : new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+				for( int offset = 0 ; offset < 16 ; offset++ ) {
+					for( int length = 0 ; length <= 40 ; length++ ) {
+						byte[] data = new byte[ offset + length + 8 ];
+						r.nextBytes( data );
+						int maskkey = r.nextInt();
+						ByteBuffer expected = ByteBuffer.wrap( data.clone() );
+						maskBytewise( expected, offset, length, keyBytes( maskkey ) );
+						ByteBuffer actual = direct == 1 ? ByteBuffer.allocateDirect( data.length ) : ByteBuffer.allocate( data.length );
+						actual.put( data ).clear();
+						actual.order( order );
+						Draft_10.mask( actual, offset, length, maskkey );
+						if( !actual.order( ByteOrder.BIG_ENDIAN ).equals( expected ) )
+							throw new AssertionError( "mismatch direct=" + direct + " order=" + order + " offset=" + offset + " length=" + length );
+					}
+				}
+			}
+		}
+	}
+
+	static void run( int size, boolean direct, long bytes ) {
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect( size ) : ByteBuffer.allocate( size );
+		int maskkey = 0x12345678;
+		byte[] key = keyBytes( maskkey );
+		long count = Math.max( 1, bytes / size );
+
+		long time = System.nanoTime();
+		for( long n = 0 ; n < count ; n++ )
+			maskBytewise( buffer, 0, size, key );
+		long bytewise = System.nanoTime() - time;
+
+		time = System.nanoTime();
+		for( long n = 0 ; n < count ; n++ )
+			Draft_10.mask( buffer, 0, size, maskkey );
+		long wordwise = System.nanoTime() - time;
+
+		System.out.printf( "%d\t%s\t%.0f\t\t%.0f\t\t%.0f\t\t%.0f%n", size, direct ? "direct" : "heap", bytewise / (double) count, wordwise / (double) count, count * (double) size / ( 1 << 20 ) / ( bytewise / 1e9 ), count * (double) size / ( 1 << 20 ) / ( wordwise / 1e9 ) );
+	}
+
+	public static void main( String[] args ) {
+		long bytes = ( args.length > 0 ? Long.parseLong( args[ 0 ] ) : 1024 ) << 20;
+		int rounds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 3;
+		verify();
+		int[] sizes = { 64, 4096, 1 << 20 };
+		for( int r = 0 ; r < rounds ; r++ ) {
+			System.out.println( "round " + r + "\nsize\tbuffer\tns bytewise\tns wordwise\tMB/s bytewise\tMB/s wordwise" );
+			for( int size : sizes ) {
+				run( size, false, bytes );
+				run( size, true, bytes );
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.drafts.Draft.FrameSink;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.Framedata.Opcode;
+import org.java_websocket.framing.FramedataImpl1;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Counts the bytes allocated while small binary messages are received, which should be none.
+ * <ol>
+ * <li><b>parser</b>: {@link Draft_17#translateFrame(ByteBuffer, FrameSink)} parses a buffer full of masked frames over and over</li>
+ * <li><b>server</b>: a server with {@link WebSocketServer#setZeroCopyPayloads(boolean) zero copy payloads} and a single worker receives messages from a {@link BenchmarkClient}. The allocations of the worker thread are counted, which covers decoding and dispatching up to {@link WebSocketServer#onMessage(WebSocket, ByteBuffer)}.</li>
+ * </ol>
+ * Exits with status 1 if more than <var>maxbytes</var> bytes are allocated per message on average. The server still allocates a read only view per receive buffer, since the buffers of the pool take turns, so the limit is not 0 and small messages should be used to keep that share low.
+ *
+ * <pre>
+ * java ReceiveAllocationTest [payloadsize] [messages] [maxbytes]
+ * </pre>
+ */
+public class ReceiveAllocationTest {
+
+	static long sink;
+
+	static double parser( int payloadsize, int messages ) throws Exception {
+		Draft_17 client = new Draft_17();
+		client.setParseMode( Role.CLIENT );
+		FramedataImpl1 f = new FramedataImpl1( Opcode.BINARY );
+		f.setFin( true );
+		f.setPayload( ByteBuffer.allocate( payloadsize ) );
+		ByteBuffer frame = client.createBinaryFrame( f );
+		int perbuffer = 16384 / frame.remaining();
+		ByteBuffer buffer = ByteBuffer.allocateDirect( perbuffer * frame.remaining() );
+		for( int i = 0 ; i < perbuffer ; i++ )
+			buffer.put( frame.duplicate() );
+
+		Draft_17 server = new Draft_17();
+		FrameSink counter = new FrameSink() {
+			@Override
+			public void onFrame( Framedata frame ) {
+				sink += frame.getPayloadData().remaining();
+			}
+		};
+		long parsed = 0;
+		long alloc = 0;
+		for( int round = 0 ; round < 2 ; round++ ) { // the first round warms up
+			alloc = AllocationMeter.allocatedBytes();
+			parsed = 0;
+			while ( parsed < messages ) {
+				buffer.clear();
+				server.translateFrame( buffer, counter );
+				parsed += perbuffer;
+			}
+			alloc = AllocationMeter.allocatedBytes() - alloc;
+		}
+		return alloc / (double) parsed;
+	}
+
+	static double server( int payloadsize, int messages ) throws Exception {
+		final AtomicLong received = new AtomicLong();
+		final Thread[] worker = new Thread[ 1 ];
+		WebSocketServer server = new WebSocketServer( new InetSocketAddress( "127.0.0.1", 0 ), 1 ) {
+			@Override
+			public void onMessage( WebSocket conn, ByteBuffer message ) {
+				if( worker[ 0 ] == null )
+					worker[ 0 ] = Thread.currentThread();
+				sink += message.remaining();
+				received.incrementAndGet();
+			}
+
+			@Override
+			public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+			}
+
+			@Override
+			public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+			}
+
+			@Override
+			public void onMessage( WebSocket conn, String message ) {
+			}
+
+			@Override
+			public void onError( WebSocket conn, Exception ex ) {
+				ex.printStackTrace();
+			}
+		};
+		server.setZeroCopyPayloads( true );
+		server.start();
+		while ( server.getPort() <= 0 )
+			Thread.sleep( 10 );
+		BenchmarkClient client = new BenchmarkClient( new InetSocketAddress( "127.0.0.1", server.getPort() ), 1, new BenchmarkClient.Handler() {
+			@Override
+			public void onOpen( BenchmarkClient.Connection conn ) {
+			}
+
+			@Override
+			public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer payload ) {
+			}
+		} );
+		client.connect( 1 );
+		client.awaitOpen( 1, 10, TimeUnit.SECONDS );
+		BenchmarkClient.Connection conn = client.getConnections().get( 0 );
+		ByteBuffer payload = ByteBuffer.allocate( payloadsize );
+
+		double result = 0;
+		for( int round = 0 ; round < 2 ; round++ ) { // the first round warms up
+			long target = received.get() + messages;
+			long alloc = worker[ 0 ] == null ? 0 : AllocationMeter.allocatedBytes( worker[ 0 ] );
+			for( int i = 0 ; i < messages ; i++ )
+				conn.sendBinary( payload );
+			while ( received.get() < target )
+				Thread.sleep( 10 );
+			if( worker[ 0 ] != null && round > 0 )
+				result = ( AllocationMeter.allocatedBytes( worker[ 0 ] ) - alloc ) / (double) messages;
+		}
+		client.close();
+		server.stop( 1000 );
+		return result;
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int payloadsize = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 64;
+		int messages = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 1000000;
+		double maxbytes = args.length > 2 ? Double.parseDouble( args[ 2 ] ) : 2;
+		if( !AllocationMeter.isSupported() ) {
+			System.out.println( "the vm does not count allocations per thread" );
+			return;
+		}
+		double parser = parser( payloadsize, messages );
+		double server = server( payloadsize, messages );
+		System.out.printf( "payload=%d messages=%d%nparser\t%.3f bytes/message%nserver\t%.3f bytes/message%n", payloadsize, messages, parser, server );
+		System.exit( parser > maxbytes || server > maxbytes ? 1 : 0 );
+	}
+}
@@ -0,0 +1,94 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Measures the echo throughput of a {@link WebSocketServer} for an increasing number of selector loops.<br>
+ * Every connection keeps a fixed number of small binary messages in flight. The throughput should grow with the selector count until the cores are saturated.
+ * 
+ * <pre>
+ * java SelectorScalingBenchmark [connections] [inflight] [seconds] [maxselectors]
+ * </pre>
+ * 
+ * @see WebSocketServer#setSelectorCount(int)
+ */
+public class SelectorScalingBenchmark {
+
+	static class EchoServer extends WebSocketServer {
+		public EchoServer( int decoders ) {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), decoders );
+		}
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+			if( conn.isOpen() )
+				conn.send( message );
+		}
+		@Override
+		public void onMessage( WebSocket conn, ByteBuffer message ) {
+			if( conn.isOpen() )
+				conn.send( message );
+		}
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+			ex.printStackTrace();
+		}
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 512;
+		final int inflight = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 8;
+		int seconds = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 5;
+		int cores = Runtime.getRuntime().availableProcessors();
+		int maxselectors = args.length > 3 ? Integer.parseInt( args[ 3 ] ) : cores;
+
+		System.out.println( "connections=" + connections + " inflight=" + inflight + " cores=" + cores );
+		System.out.println( "selectors\tmsgs/s" );
+		for( int selectors = 1 ; selectors <= maxselectors ; selectors *= 2 ) {
+			EchoServer server = new EchoServer( cores );
+			server.setSelectorCount( selectors );
+			server.start();
+			while ( server.getPort() <= 0 )
+				Thread.sleep( 10 );
+
+			final AtomicLong echoes = new AtomicLong();
+			final ByteBuffer payload = ByteBuffer.allocate( 64 );
+			BenchmarkClient client = new BenchmarkClient( new InetSocketAddress( "127.0.0.1", server.getPort() ), Math.max( 1, cores / 2 ), new BenchmarkClient.Handler() {
+				@Override
+				public void onOpen( BenchmarkClient.Connection conn ) {
+					for( int i = 0 ; i < inflight ; i++ )
+						conn.sendBinary( payload );
+				}
+				@Override
+				public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer data ) {
+					echoes.incrementAndGet();
+					conn.sendBinary( payload );
+				}
+			} );
+			client.connect( connections );
+			if( !client.awaitOpen( connections, 30, TimeUnit.SECONDS ) ) {
+				System.out.println( "only " + client.getOpenCount() + " connections could be opened" );
+			}
+			Thread.sleep( 2000 ); // warm up
+			long start = echoes.get();
+			long time = System.nanoTime();
+			Thread.sleep( seconds * 1000L );
+			long rate = ( echoes.get() - start ) * 1000000000L / ( System.nanoTime() - time );
+			System.out.println( selectors + "\t\t" + rate );
+
+			client.close();
+			server.stop( 1000 );
+		}
+		System.exit( 0 );
+	}
+}
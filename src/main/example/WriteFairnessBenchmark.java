@@ -0,0 +1,143 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Measures the delivery latency of small updates while one connection of the same selector loop receives a bulk transfer.<br>
+ * The server keeps several megabytes queued for the bulk receiver at all times and every millisecond sends a timestamp to each of the small receivers. The latency is the time from the send call until the client decoded the update.<br>
+ * Without a {@link WebSocketServer#setWriteQuantum(int) write quantum} the selector writes everything queued for the bulk receiver before it serves anyone else, which shows up in the tail latency.
+ *
+ * <pre>
+ * java WriteFairnessBenchmark [receivers] [seconds]
+ * </pre>
+ */
+public class WriteFairnessBenchmark {
+
+	static class FanoutServer extends WebSocketServer {
+		public FanoutServer() {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), 1 );
+		}
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+		}
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+			ex.printStackTrace();
+		}
+	}
+
+	static void run( String name, int quantum, int receivers, int seconds ) throws Exception {
+		final FanoutServer server = new FanoutServer();
+		server.setWriteQuantum( quantum );
+		server.start();
+		while ( server.getPort() <= 0 )
+			Thread.sleep( 10 );
+		InetSocketAddress address = new InetSocketAddress( "127.0.0.1", server.getPort() );
+
+		final long[] latencies = new long[ receivers * seconds * 1000 ];
+		final AtomicInteger count = new AtomicInteger();
+		BenchmarkClient small = new BenchmarkClient( address, 1, new BenchmarkClient.Handler() {
+			@Override
+			public void onOpen( BenchmarkClient.Connection conn ) {
+			}
+			@Override
+			public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer data ) {
+				long latency = System.nanoTime() - data.getLong( data.position() );
+				int i = count.getAndIncrement();
+				if( i < latencies.length )
+					latencies[ i ] = latency;
+			}
+		} );
+		small.connect( receivers );
+		small.awaitOpen( receivers, 30, TimeUnit.SECONDS );
+		while ( server.connections().size() < receivers )
+			Thread.sleep( 10 );
+		List<WebSocket> subs = new ArrayList<WebSocket>();
+		Collection<WebSocket> c = server.connections();
+		synchronized ( c ) {
+			subs.addAll( c );
+		}
+		BenchmarkClient bulk = new BenchmarkClient( address, 1, new BenchmarkClient.Handler() {
+			@Override
+			public void onOpen( BenchmarkClient.Connection conn ) {
+			}
+			@Override
+			public void onFrame( BenchmarkClient.Connection conn, int opcode, ByteBuffer data ) {
+			}
+		} );
+		bulk.connect( 1 );
+		bulk.awaitOpen( 1, 30, TimeUnit.SECONDS );
+		while ( server.connections().size() < receivers + 1 )
+			Thread.sleep( 10 );
+
+		WebSocketImpl bulkconn = null;
+		synchronized ( c ) {
+			for( WebSocket ws : c ) {
+				if( !subs.contains( ws ) )
+					bulkconn = (WebSocketImpl) ws;
+			}
+		}
+
+		final byte[] chunk = new byte[ 1024 * 1024 ];
+		ByteBuffer stamp = ByteBuffer.allocate( 8 );
+		long end = System.nanoTime() + seconds * 1000000000L;
+		long bulkbytes = 0;
+		while ( System.nanoTime() < end ) {
+			while ( bulkconn.outQueue.size() < 8 ) {
+				bulkconn.send( chunk );
+				bulkbytes += chunk.length;
+			}
+			for( WebSocket ws : subs ) {
+				stamp.clear();
+				stamp.putLong( System.nanoTime() );
+				stamp.flip();
+				ws.send( stamp );
+			}
+			Thread.sleep( 1 );
+		}
+		Thread.sleep( 500 );
+
+		int n = Math.min( count.get(), latencies.length );
+		long[] sorted = Arrays.copyOf( latencies, n );
+		Arrays.sort( sorted );
+		System.out.println( name + "\t\t" + n + "\t" + bulkbytes / seconds / ( 1024 * 1024 ) + "\t\t" + percentile( sorted, 0.5 ) + "\t" + percentile( sorted, 0.99 ) + "\t" + percentile( sorted, 0.999 ) + "\t" + ( n > 0 ? sorted[ n - 1 ] / 1000 : 0 ) );
+
+		small.close();
+		bulk.close();
+		server.stop( 1000 );
+	}
+
+	/** @return the given percentile in microseconds */
+	static long percentile( long[] sorted, double p ) {
+		if( sorted.length == 0 )
+			return 0;
+		return sorted[ (int) Math.min( sorted.length - 1, sorted.length * p ) ] / 1000;
+	}
+
+	public static void main( String[] args ) throws Exception {
+		int receivers = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 200;
+		int seconds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 5;
+		System.out.println( "receivers=" + receivers + " cores=" + Runtime.getRuntime().availableProcessors() );
+		System.out.println( "quantum\t\tupdates\tbulk MB/s\tp50 us\tp99 us\tp99.9 us\tmax us" );
+		run( "unlimited", Integer.MAX_VALUE, receivers, seconds );
+		run( "64k", 64 * 1024, receivers, seconds );
+		run( "16k", 16 * 1024, receivers, seconds );
+		System.exit( 0 );
+	}
+}
@@ -0,0 +1,78 @@
+import java.nio.ByteBuffer;
+
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.drafts.Draft.FrameSink;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.Framedata.Opcode;
+import org.java_websocket.framing.FramedataImpl1;
+
+/**
+ * Measures the receive path of binary messages with and without {@link org.java_websocket.WebSocketImpl#setZeroCopyPayloads(boolean)}.<br>
+ * A direct buffer like the ones of the server's receive pool holds one masked frame, which is parsed and unmasked in place by {@link Draft_17#translateFrame(ByteBuffer, FrameSink)}. The payload is then either copied, like connections do by default, or used in place. The consumer reads one long per cache line of the payload.<br>
+ * Reports the throughput and the bytes allocated per message.
+ *
+ * <pre>
+ * java ZeroCopyReceiveBenchmark [megabytes per size] [rounds]
+ * </pre>
+ */
+public class ZeroCopyReceiveBenchmark {
+
+	static long sink;
+
+	static ByteBuffer frame( int size ) {
+		Draft_17 client = new Draft_17();
+		client.setParseMode( Role.CLIENT );
+		FramedataImpl1 f = new FramedataImpl1( Opcode.BINARY );
+		f.setFin( true );
+		try {
+			f.setPayload( ByteBuffer.allocate( size ) );
+		} catch ( Exception e ) {
+			throw new RuntimeException( e );
+		}
+		ByteBuffer encoded = client.createBinaryFrame( f );
+		ByteBuffer direct = ByteBuffer.allocateDirect( encoded.remaining() );
+		direct.put( encoded );
+		direct.flip();
+		return direct;
+	}
+
+	static void run( int size, long bytes, final boolean zerocopy ) throws Exception {
+		Draft_17 server = new Draft_17();
+		ByteBuffer buffer = frame( size );
+		FrameSink consumer = new FrameSink() {
+			@Override
+			public void onFrame( Framedata frame ) {
+				ByteBuffer payload = frame.getPayloadData();
+				if( !zerocopy )
+					payload = FramedataImpl1.retain( payload );
+				for( int i = payload.position() ; i + 8 <= payload.limit() ; i += 64 )
+					sink += payload.getLong( i );
+			}
+		};
+		long messages = Math.max( 1, bytes / size );
+		long alloc = AllocationMeter.allocatedBytes();
+		long time = System.nanoTime();
+		for( long m = 0 ; m < messages ; m++ ) {
+			// unmasking in place toggles the payload between its masked and unmasked form, which does not matter here
+			buffer.clear();
+			server.translateFrame( buffer, consumer );
+		}
+		time = System.nanoTime() - time;
+		alloc = AllocationMeter.allocatedBytes() - alloc;
+		System.out.printf( "%d\t%s\t%.0f\t\t%s%n", size, zerocopy ? "zerocopy" : "copy", ( messages * (double) size / ( 1 << 20 ) ) / ( time / 1e9 ), AllocationMeter.isSupported() ? String.valueOf( alloc / messages ) : "n/a" );
+	}
+
+	public static void main( String[] args ) throws Exception {
+		long bytes = ( args.length > 0 ? Long.parseLong( args[ 0 ] ) : 2048 ) << 20;
+		int rounds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 3;
+		int[] sizes = { 1024, 16 * 1024, 256 * 1024 };
+		for( int r = 0 ; r < rounds ; r++ ) {
+			System.out.println( "round " + r + "\nsize\tmode\tMB/s\t\tbytes/message" );
+			for( int size : sizes ) {
+				run( size, bytes, false );
+				run( size, bytes, true );
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package org.java_websocket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Identifies a typed attribute of a connection; see {@link WebSocket#getAttribute(AttributeKey)}.<br>
+ * Every key is assigned the next free slot index when it is created, and connections store their attributes in an array at that index. Looking up an attribute is therefore a single array access.<br>
+ * Since every key takes up a slot in each connection which uses attributes, keys are meant to be created once and kept in constants rather than being created per connection or per message.
+ *
+ * <pre>
+ * static final AttributeKey&lt;Session&gt; SESSION = AttributeKey.newKey( "session" );
+ * </pre>
+ */
+public final class AttributeKey<T> {
+
+	private static final AtomicInteger keys = new AtomicInteger( 0 );
+
+	private final String name;
+	private final int index;
+
+	private AttributeKey( String name , int index ) {
+		this.name = name;
+		this.index = index;
+	}
+
+	/**
+	 * Creates a key with a slot of its own. The name is only used for debugging, keys with the same name are distinct.
+	 */
+	public static <T> AttributeKey<T> newKey( String name ) {
+		return new AttributeKey<T>( name, keys.getAndIncrement() );
+	}
+
+	/** Returns the number of keys which have been created so far. */
+	public static int count() {
+		return keys.get();
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/** Returns the slot this key occupies in the attribute array of every connection. */
+	public int index() {
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return "AttributeKey{" + name + "#" + index + "}";
+	}
+}
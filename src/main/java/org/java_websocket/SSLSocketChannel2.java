@@ -10,6 +10,7 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
@@ -30,7 +31,7 @@ import javax.net.ssl.SSLSession;
 /**
  * Implements the relevant portions of the SocketChannel interface with the SSLEngine wrapper.
  */
-public class SSLSocketChannel2 implements ByteChannel, WrappedByteChannel {
+public class SSLSocketChannel2 implements ByteChannel, WrappedByteChannel, GatheringByteChannel {
 	/**
 	 * This object is used to feed the {@link SSLEngine}'s wrap and unwrap methods during the handshake phase.
 	 **/
@@ -157,6 +158,28 @@ public class SSLSocketChannel2 implements ByteChannel, WrappedByteChannel {
 		return outCrypt;
 	}
 
+	/**
+	 * Like {@link #wrap(ByteBuffer)} but lets the engine take the plain data of one record from several buffers.<br>
+	 * Wraps records until the buffers are consumed or {@link #outCrypt} is full.
+	 * 
+	 * @return the number of plain bytes consumed
+	 **/
+	private synchronized long wrap( ByteBuffer[] srcs, int offset, int length ) throws SSLException {
+		long consumed = 0;
+		int end = offset + length;
+		outCrypt.compact();
+		while ( offset < end ) {
+			writeEngineResult = sslEngine.wrap( srcs, offset, end - offset, outCrypt );
+			consumed += writeEngineResult.bytesConsumed();
+			if( writeEngineResult.getStatus() != Status.OK || writeEngineResult.bytesConsumed() == 0 )
+				break;
+			while ( offset < end && !srcs[ offset ].hasRemaining() )
+				offset++;
+		}
+		outCrypt.flip();
+		return consumed;
+	}
+
 	/**
 	 * performs the unwrap operation by unwrapping from {@link #inCrypt} to {@link #inData}
 	 **/
@@ -222,6 +245,37 @@ public class SSLSocketChannel2 implements ByteChannel, WrappedByteChannel {
 
 	}
 
+	/**
+	 * Encrypts as much of <var>srcs</var> as fits into the records of one network write.<br>
+	 * Many small buffers therefore end up in a single record and a single write to the underlying channel instead of one of each per buffer.
+	 * 
+	 * @return the number of plain bytes consumed from <var>srcs</var>, which is not the number of bytes written to the underlying channel.
+	 **/
+	@Override
+	public long write( ByteBuffer[] srcs, int offset, int length ) throws IOException {
+		if( !isHandShakeComplete() ) {
+			processHandshake();
+			return 0;
+		}
+		if( bufferallocations <= 1 ) {
+			createBuffers( sslEngine.getSession() );
+		}
+		if( outCrypt.hasRemaining() ) {
+			// the records of an earlier write have to go out first
+			socketChannel.write( outCrypt );
+			if( outCrypt.hasRemaining() )
+				return 0;
+		}
+		long consumed = wrap( srcs, offset, length );
+		socketChannel.write( outCrypt );
+		return consumed;
+	}
+
+	@Override
+	public long write( ByteBuffer[] srcs ) throws IOException {
+		return write( srcs, 0, srcs.length );
+	}
+
 	/**
 	 * Blocks when in blocking mode until at least one byte has been decoded.<br>
 	 * When not in blocking mode 0 may be returned.
@@ -0,0 +1,85 @@
+package org.java_websocket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.framing.CloseFrame;
+
+/**
+ * Decides what happens when a message is sent to a connection whose {@link WebSocket#getBufferedAmount() buffered amount} would exceed its limit.<br>
+ * The policy is only consulted for frames which the draft considers {@link org.java_websocket.drafts.Draft#isDiscardableFrame(ByteBuffer) discardable}. Handshakes, control frames and the frames of fragmented messages are always queued.<br>
+ * The limit is checked without locking, so concurrent senders may exceed it by the size of the messages they send at the same time.
+ *
+ * @see WebSocketImpl#setSlowConsumerPolicy(SlowConsumerPolicy, long)
+ */
+public abstract class SlowConsumerPolicy {
+
+	/**
+	 * Called by the sending thread before <var>frame</var> is queued.
+	 *
+	 * @param limit
+	 *            the maximum buffered amount of <var>conn</var>
+	 * @return whether <var>frame</var> shall be queued
+	 */
+	public abstract boolean onLimitExceeded( WebSocketImpl conn, ByteBuffer frame, long limit );
+
+	/**
+	 * Discards everything that can be discarded and closes the connection with the given code, e.g. {@link CloseFrame#POLICY_VALIDATION} or {@link CloseFrame#TOOBIG}.<br>
+	 * The close frame is queued behind the frames which could not be discarded.
+	 */
+	public static SlowConsumerPolicy close( final int code ) {
+		return new SlowConsumerPolicy() {
+			@Override
+			public boolean onLimitExceeded( WebSocketImpl conn, ByteBuffer frame, long limit ) {
+				conn.discardQueued( Long.MAX_VALUE );
+				conn.close( code, "slow consumer: more than " + limit + " bytes queued" );
+				return false;
+			}
+		};
+	}
+
+	/** Discards the frame which is being sent. */
+	public static SlowConsumerPolicy dropNewest() {
+		return new SlowConsumerPolicy() {
+			@Override
+			public boolean onLimitExceeded( WebSocketImpl conn, ByteBuffer frame, long limit ) {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Discards the oldest queued messages until the frame which is being sent fits.<br>
+	 * The frame at the head of the queue is never discarded because it may already be partially written. If not enough can be discarded the frame which is being sent is discarded instead.
+	 */
+	public static SlowConsumerPolicy dropOldest() {
+		return new SlowConsumerPolicy() {
+			@Override
+			public boolean onLimitExceeded( WebSocketImpl conn, ByteBuffer frame, long limit ) {
+				long excess = conn.getBufferedAmount() + frame.remaining() - limit;
+				return conn.discardQueued( excess ) >= excess;
+			}
+		};
+	}
+
+	/**
+	 * Blocks the sending thread until the frame fits or the timeout elapsed, in which case <var>fallback</var> decides.<br>
+	 * The buffered amount only decreases while the queue is written, so this policy must not be used by connections which send from the thread which writes their queue, e.g. a server's selector thread from within {@link org.java_websocket.server.WebSocketServer#onWritabilityChanged(WebSocket, boolean)}.
+	 */
+	public static SlowConsumerPolicy block( final long timeout, final TimeUnit unit, final SlowConsumerPolicy fallback ) {
+		if( fallback == null )
+			throw new IllegalArgumentException( "the fallback policy must not be null" );
+		return new SlowConsumerPolicy() {
+			@Override
+			public boolean onLimitExceeded( WebSocketImpl conn, ByteBuffer frame, long limit ) {
+				try {
+					if( conn.awaitBufferedAmount( limit - frame.remaining(), unit.toNanos( timeout ) ) )
+						return true;
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+				return fallback.onLimitExceeded( conn, frame, limit );
+			}
+		};
+	}
+}
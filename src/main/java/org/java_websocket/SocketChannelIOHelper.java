@@ -3,12 +3,23 @@ package org.java_websocket;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
 import java.nio.channels.spi.AbstractSelectableChannel;
+import java.util.Iterator;
 
 import org.java_websocket.WebSocket.Role;
 
 public class SocketChannelIOHelper {
 
+	/** The maximum number of queued buffers handed to a single gathering write. 1 makes {@link #batch(WebSocketImpl, ByteChannel)} write the buffers one at a time. */
+	public static int GATHER_BUFFERS = 64;
+	/** Once the queued buffers picked for a gathering write hold this many bytes no further buffers are added. */
+	public static int GATHER_BYTES = 256 * 1024;
+
+	/** Scratch array of the writing thread, so that gathering does not allocate */
+	private static final ThreadLocal<ByteBuffer[]> gatherarrays = new ThreadLocal<ByteBuffer[]>();
+
 	public static boolean read( final ByteBuffer buf, WebSocketImpl ws, ByteChannel channel ) throws IOException {
 		buf.clear();
 		int read = channel.read( buf );
@@ -41,6 +52,16 @@ public class SocketChannelIOHelper {
 
 	/** Returns whether the whole outQueue has been flushed */
 	public static boolean batch( WebSocketImpl ws, ByteChannel sockchannel ) throws IOException {
+		return batch( ws, sockchannel, Long.MAX_VALUE );
+	}
+
+	/**
+	 * Writes the outQueue until it is empty, the channel does not take any more data or <var>quantum</var> bytes have been written.<br>
+	 * The quantum is checked between write calls, so a single call may exceed it by up to the size of the socket send buffer.
+	 * 
+	 * @return whether the whole outQueue has been flushed. When false is returned the caller has to keep the interest in OP_WRITE.
+	 **/
+	public static boolean batch( WebSocketImpl ws, ByteChannel sockchannel, long quantum ) throws IOException {
 		ByteBuffer buffer = ws.outQueue.peek();
 		WrappedByteChannel c = null;
 
@@ -52,15 +73,10 @@ public class SocketChannelIOHelper {
 				}
 			}
 		} else {
-			do {// FIXME writing as much as possible is unfair!!
-				/*int written = */sockchannel.write( buffer );
-				if( buffer.remaining() > 0 ) {
+			synchronized ( ws.outQueue ) {
+				if( !write( ws, sockchannel, quantum ) )
 					return false;
-				} else {
-					ws.outQueue.poll(); // Buffer finished. Remove it.
-					buffer = ws.outQueue.peek();
-				}
-			} while ( buffer != null );
+			}
 		}
 
 		if( ws.outQueue.isEmpty() && ws.isFlushAndClose() && ws.getDraft().getRole() == WebSocket.Role.SERVER ) {//
@@ -70,4 +86,74 @@ public class SocketChannelIOHelper {
 		}
 		return c != null ? !( (WrappedByteChannel) sockchannel ).isNeedWrite() : true;
 	}
+
+	/** @return whether the whole outQueue has been written */
+	private static boolean write( WebSocketImpl ws, ByteChannel sockchannel, long quantum ) throws IOException {
+		if( GATHER_BUFFERS > 1 && sockchannel instanceof GatheringByteChannel )
+			return gather( ws, (GatheringByteChannel) sockchannel, quantum );
+		ByteBuffer buffer = ws.outQueue.peek();
+		long written = 0;
+		while ( buffer != null && written < quantum ) {
+			int remaining = buffer.remaining();
+			sockchannel.write( buffer ); // a wrapped channel returns the number of encrypted bytes instead of the number of bytes taken from the buffer
+			remaining -= buffer.remaining();
+			written += remaining;
+			ws.onBytesWritten( remaining );
+			if( buffer.remaining() > 0 ) {
+				return false;
+			} else {
+				ws.outQueue.poll(); // Buffer finished. Remove it.
+				buffer = ws.outQueue.peek();
+			}
+		}
+		return buffer == null; // otherwise the quantum is used up, let the other connections write first
+	}
+
+	/**
+	 * Writes the outQueue with as few calls to {@link GatheringByteChannel#write(ByteBuffer[], int, int)} as possible.<br>
+	 * Every call takes up to {@link #GATHER_BUFFERS} buffers or {@link #GATHER_BYTES} bytes from the head of the queue. Buffers are only removed from the queue once they have been written completely, so a partially written buffer stays at the head and is continued by the next call.
+	 * 
+	 * @return whether the whole outQueue has been written
+	 */
+	private static boolean gather( WebSocketImpl ws, GatheringByteChannel channel, long quantum ) throws IOException {
+		ByteBuffer[] srcs = gatherarrays.get();
+		if( srcs == null || srcs.length != GATHER_BUFFERS ) {
+			srcs = new ByteBuffer[ GATHER_BUFFERS ];
+			gatherarrays.set( srcs );
+		}
+		WrappedByteChannel wrapped = channel instanceof WrappedByteChannel ? (WrappedByteChannel) channel : null;
+		long total = 0;
+		try {
+			while ( true ) {
+				if( total >= quantum )
+					return ws.outQueue.isEmpty(); // the quantum is used up, let the other connections write first
+				long budget = Math.min( GATHER_BYTES, quantum - total );
+				int count = 0;
+				long bytes = 0;
+				Iterator<ByteBuffer> it = ws.outQueue.iterator();
+				while ( count < srcs.length && bytes < budget && it.hasNext() ) {
+					ByteBuffer b = it.next();
+					srcs[ count++ ] = b;
+					bytes += b.remaining();
+				}
+				if( count == 0 )
+					return true;
+				long written = channel.write( srcs, 0, count );
+				total += written;
+				ws.onBytesWritten( written );
+				int done = 0;
+				while ( done < count && !srcs[ done ].hasRemaining() ) {
+					ws.outQueue.poll(); // Buffer finished. Remove it.
+					done++;
+				}
+				if( done < count ) {
+					// a plain channel only writes partially when the socket buffer is full, while a wrapped channel may just have produced as much as fits into one batch of records
+					if( wrapped == null || written == 0 || wrapped.isNeedWrite() )
+						return false;
+				}
+			}
+		} finally {
+			Arrays.fill( srcs, null );
+		}
+	}
 }
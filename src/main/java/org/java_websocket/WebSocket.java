@@ -3,11 +3,15 @@ package org.java_websocket;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
+import java.util.concurrent.TimeUnit;
 
 import org.java_websocket.drafts.Draft;
 import org.java_websocket.framing.Framedata;
 import org.java_websocket.framing.Framedata.Opcode;
 
+/**
+ * <b>Incompatible with 1.3.0:</b> the methods for write buffer watermarks, round trip times, the attachment and attributes have been added. Implementations other than {@link WebSocketImpl} have to provide them.
+ */
 public interface WebSocket {
 	public enum Role {
 		CLIENT, SERVER
@@ -80,6 +84,65 @@ public interface WebSocket {
 
 	public abstract boolean hasBufferedData();
 
+	/**
+	 * Returns the number of bytes which have been queued with the send methods but not yet been written to the socket.<br>
+	 * This includes the framing overhead.
+	 */
+	public abstract long getBufferedAmount();
+
+	/**
+	 * Returns false while the {@link #getBufferedAmount() buffered amount} has risen above the high watermark and not yet fallen back to the low watermark.<br>
+	 * Sending while the connection is not writable still works but lets the queue grow further.
+	 * 
+	 * @see #setWriteBufferWatermarks(long, long)
+	 */
+	public abstract boolean isWritable();
+
+	/**
+	 * Sets the buffered amounts at which this connection becomes unwritable (above <var>high</var>) and writable again (at or below <var>low</var>).<br>
+	 * Every transition is reported to the listener via {@link WebSocketListener#onWebsocketWritabilityChanged(WebSocket, boolean)}.
+	 */
+	public abstract void setWriteBufferWatermarks( long low, long high );
+
+	/**
+	 * Returns the round-trip time measured with the last heartbeat ping which has been answered, or -1 if none has been answered yet.
+	 * 
+	 * @see org.java_websocket.server.WebSocketServer#setHeartbeat(long, long, TimeUnit)
+	 */
+	public abstract long getLastRoundTripTime( TimeUnit unit );
+
+	/**
+	 * Returns the smoothed average of the round-trip times of the heartbeat pings, or -1 if none has been answered yet.
+	 */
+	public abstract long getAverageRoundTripTime( TimeUnit unit );
+
+	/**
+	 * Returns the object which has been attached to this connection with {@link #setAttachment(Object)} or null.
+	 */
+	public abstract <T> T getAttachment();
+
+	/**
+	 * Attaches an arbitrary object, e.g. the session of the application, to this connection.
+	 */
+	public abstract <T> void setAttachment( T attachment );
+
+	/**
+	 * Returns the value of the given attribute of this connection or null if it has not been set.
+	 */
+	public abstract <T> T getAttribute( AttributeKey<T> key );
+
+	/**
+	 * Sets the given attribute of this connection. Setting null removes it.
+	 */
+	public abstract <T> void setAttribute( AttributeKey<T> key, T value );
+
+	/**
+	 * Sets the given attribute of this connection unless it already has a value.
+	 *
+	 * @return the value the attribute already had or null if <var>value</var> has been set
+	 */
+	public abstract <T> T setAttributeIfAbsent( AttributeKey<T> key, T value );
+
 	/**
 	 * @returns never returns null
 	 */
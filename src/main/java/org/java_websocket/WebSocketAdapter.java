@@ -1,6 +1,7 @@
 package org.java_websocket;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 import org.java_websocket.drafts.Draft;
 import org.java_websocket.exceptions.InvalidDataException;
@@ -50,6 +51,15 @@ public abstract class WebSocketAdapter implements WebSocketListener {
 	public void onWebsocketMessageFragment( WebSocket conn, Framedata frame ) {
 	}
 
+	/**
+	 * This default implementation does not do anything. Go ahead and overwrite it.
+	 * 
+	 * @see org.java_websocket.WebSocketListener#onWebsocketMessageChunk(WebSocket, ByteBuffer, boolean)
+	 */
+	@Override
+	public void onWebsocketMessageChunk( WebSocket conn, ByteBuffer chunk, boolean last ) {
+	}
+
 	/**
 	 * This default implementation will send a pong in response to the received ping.
 	 * The pong frame will have the same payload as the ping frame.
@@ -72,6 +82,15 @@ public abstract class WebSocketAdapter implements WebSocketListener {
 	public void onWebsocketPong( WebSocket conn, Framedata f ) {
 	}
 
+	/**
+	 * This default implementation does not do anything. Go ahead and overwrite it.
+	 * 
+	 * @see org.java_websocket.WebSocketListener#onWebsocketWritabilityChanged(WebSocket, boolean)
+	 */
+	@Override
+	public void onWebsocketWritabilityChanged( WebSocket conn, boolean writable ) {
+	}
+
 	/**
 	 * Gets the XML string that should be returned if a client requests a Flash
 	 * security policy.
@@ -9,12 +9,19 @@ import java.nio.channels.NotYetConnectedException;
 import java.nio.channels.SelectionKey;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.java_websocket.drafts.Draft;
 import org.java_websocket.drafts.Draft.CloseHandshakeType;
+import org.java_websocket.drafts.Draft.FrameSink;
 import org.java_websocket.drafts.Draft.HandshakeState;
 import org.java_websocket.drafts.Draft_10;
 import org.java_websocket.drafts.Draft_17;
@@ -28,6 +35,7 @@ import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.framing.CloseFrameBuilder;
 import org.java_websocket.framing.Framedata;
 import org.java_websocket.framing.Framedata.Opcode;
+import org.java_websocket.framing.FramedataImpl1;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.handshake.ClientHandshakeBuilder;
 import org.java_websocket.handshake.Handshakedata;
@@ -35,6 +43,8 @@ import org.java_websocket.handshake.ServerHandshake;
 import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer.WebSocketWorker;
 import org.java_websocket.util.Charsetfunctions;
+import org.java_websocket.util.SerialExecutor;
+import org.java_websocket.util.SpscArrayQueue;
 
 /**
  * Represents one end (client or server) of a single WebSocketImpl connection.
@@ -46,6 +56,23 @@ public class WebSocketImpl implements WebSocket {
 
 	public static int RCVBUF = 16384;
 
+	/** The maximum number of received buffers that may wait in the {@link #inQueue} of a connection to be decoded. */
+	public static int INQUEUE_CAPACITY = 16;
+
+	/** The default high watermark of new connections; see {@link #setWriteBufferWatermarks(long, long)} */
+	public static long HIGH_WATERMARK = 1024 * 1024;
+	/** The default low watermark of new connections; see {@link #setWriteBufferWatermarks(long, long)} */
+	public static long LOW_WATERMARK = 512 * 1024;
+
+	/** The minimum number of attribute slots allocated once the first attribute of a connection is set; see {@link AttributeKey} */
+	public static int ATTRIBUTE_SLOTS = 8;
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<WebSocketImpl,AtomicReferenceArray> ATTRIBUTES = AtomicReferenceFieldUpdater.newUpdater( WebSocketImpl.class, AtomicReferenceArray.class, "attributes" );
+
+	/** The default limit of the buffered amount of new connections; see {@link #setSlowConsumerPolicy(SlowConsumerPolicy, long)} */
+	public static long MAX_BUFFERED_AMOUNT = Long.MAX_VALUE;
+
 	public static/*final*/boolean DEBUG = false; // must be final in the future in order to take advantage of VM optimization
 
 	public static final List<Draft> defaultdraftlist = new ArrayList<Draft>( 4 );
@@ -61,19 +88,78 @@ public class WebSocketImpl implements WebSocket {
 	/** the possibly wrapped channel object whose selection is controlled by {@link #key} */
 	public ByteChannel channel;
 	/**
-	 * Queue of buffers that need to be sent to the client.
+	 * Queue of buffers that need to be sent to the client.<br>
+	 * Its monitor must be held while buffers are written from it or taken from it to be written, so that {@link #discardQueued(long)} does not remove them at the same time.
 	 */
 	public final BlockingQueue<ByteBuffer> outQueue;
 	/**
-	 * Queue of buffers that need to be processed
+	 * Queue of buffers that need to be processed.<br>
+	 * Filled by the selector thread and drained by the {@link #workerThread}.
 	 */
-	public final BlockingQueue<ByteBuffer> inQueue;
+	public final SpscArrayQueue<ByteBuffer> inQueue;
+
+	/** Set while the selector does not read from {@link #channel} because the {@link #inQueue} is full. */
+	public volatile boolean readPaused = false;
 
 	/**
-	 * Helper variable meant to store the thread which ( exclusively ) triggers this objects decode method.
+	 * Helper variable meant to store the thread which ( exclusively ) triggers this objects decode method.<br>
+	 * The connection may move to an other worker whenever it is not {@link #scheduled}.
 	 **/
 	public volatile WebSocketWorker workerThread; // TODO reset worker?
 
+	/** Passes the frames the draft parsed to {@link #decodeFrame(Framedata)} */
+	private final FrameSink framesink = new FrameSink() {
+		@Override
+		public void onFrame( Framedata frame ) throws InvalidDataException {
+			decodeFrame( frame );
+		}
+	};
+
+	/** Set while the connection waits for or is being decoded by its {@link #workerThread} */
+	public final AtomicBoolean scheduled = new AtomicBoolean( false );
+
+	/** Runs the callbacks of this connection when the server dispatches them on an application executor, null otherwise. Set before the connection is registered with a selector. */
+	public SerialExecutor mailbox = null;
+
+	/** The number of bytes in the {@link #outQueue} which have not yet been written */
+	private final AtomicLong bufferedamount = new AtomicLong( 0 );
+	private volatile boolean writable = true;
+	private volatile long highwatermark = HIGH_WATERMARK;
+	private volatile long lowwatermark = LOW_WATERMARK;
+	/** Serializes the writability transitions so that the listener is notified in the right order */
+	private final Object writabilitylock = new Object();
+	private volatile long maxbufferedamount = MAX_BUFFERED_AMOUNT;
+	private volatile SlowConsumerPolicy slowconsumerpolicy = null;
+	/** see {@link #setZeroCopyPayloads(boolean)} */
+	private volatile boolean zerocopy = false;
+	/** see {@link #setStreamingMessages(boolean)} */
+	private volatile boolean streaming = false;
+	/** The number of threads waiting in {@link #awaitBufferedAmount(long, long)}; only changed while holding the monitor of the {@link #outQueue} */
+	private volatile int blockedsenders = 0;
+
+	/** The {@link System#nanoTime()} of the last read from the channel. Only maintained while the server tracks idle timeouts. */
+	public volatile long lastread;
+	/** The {@link System#nanoTime()} of the last write to the channel. Only maintained while the server tracks idle timeouts. */
+	public volatile long lastwrite;
+
+	/** The {@link System#nanoTime()} at which the next heartbeat ping is due. Maintained by the server or client which drives the heartbeat of this connection. */
+	public volatile long nextping;
+	/** The timestamp carried by the ping which has not been answered yet, 0 if there is none; see {@link #sendTimestampPing()} */
+	private volatile long pingsent = 0;
+	/** The round-trip times in nanoseconds, -1 until the first pong arrived */
+	private volatile long lastrtt = -1;
+	private volatile long avgrtt = -1;
+
+	/** see {@link #getId()} */
+	private volatile long id = 0;
+
+	private volatile Object attachment = null;
+	/**
+	 * The attributes indexed by {@link AttributeKey#index()}, null until the first one is set. Every connection creates its own array with a compare-and-set so that connections never share a monitor.<br>
+	 * Replaced by a bigger copy when a key does not fit, while holding the monitor of the array being replaced.
+	 */
+	private volatile AtomicReferenceArray<Object> attributes = null;
+
 	/** When true no further frames may be submitted to be sent */
 	private volatile boolean flushandclosestate = false;
 
@@ -128,7 +214,7 @@ public class WebSocketImpl implements WebSocket {
 		if( listener == null || ( draft == null && role == Role.SERVER ) )// socket can be null because we want do be able to create the object without already having a bound channel
 			throw new IllegalArgumentException( "parameters must not be null" );
 		this.outQueue = new LinkedBlockingQueue<ByteBuffer>();
-		inQueue = new LinkedBlockingQueue<ByteBuffer>();
+		inQueue = new SpscArrayQueue<ByteBuffer>( INQUEUE_CAPACITY );
 		this.wsl = listener;
 		this.role = Role.CLIENT;
 		if( draft != null )
@@ -152,7 +238,7 @@ public class WebSocketImpl implements WebSocket {
 		assert ( socketBuffer.hasRemaining() );
 
 		if( DEBUG )
-			System.out.println( "process(" + socketBuffer.remaining() + "): {" + ( socketBuffer.remaining() > 1000 ? "too big to display" : new String( socketBuffer.array(), socketBuffer.position(), socketBuffer.remaining() ) ) + "}" );
+			System.out.println( "process(" + socketBuffer.remaining() + "): {" + ( socketBuffer.remaining() > 1000 ? "too big to display" : Charsetfunctions.stringAscii( socketBuffer ) ) + "}" );
 
 		if( readystate != READYSTATE.NOT_YET_CONNECTED ) {
 			decodeFrames( socketBuffer );;
@@ -315,81 +401,106 @@ public class WebSocketImpl implements WebSocket {
 	}
 
 	private void decodeFrames( ByteBuffer socketBuffer ) {
-
-		List<Framedata> frames;
 		try {
-			frames = draft.translateFrame( socketBuffer );
-			for( Framedata f : frames ) {
-				if( DEBUG )
-					System.out.println( "matched frame: " + f );
-				Opcode curop = f.getOpcode();
-				boolean fin = f.isFin();
-
-				if( curop == Opcode.CLOSING ) {
-					int code = CloseFrame.NOCODE;
-					String reason = "";
-					if( f instanceof CloseFrame ) {
-						CloseFrame cf = (CloseFrame) f;
-						code = cf.getCloseCode();
-						reason = cf.getMessage();
-					}
-					if( readystate == READYSTATE.CLOSING ) {
-						// complete the close handshake by disconnecting
-						closeConnection( code, reason, true );
-					} else {
-						// echo close handshake
-						if( draft.getCloseHandshakeType() == CloseHandshakeType.TWOWAY )
-							close( code, reason, true );
-						else
-							flushAndClose( code, reason, false );
-					}
-					continue;
-				} else if( curop == Opcode.PING ) {
-					wsl.onWebsocketPing( this, f );
-					continue;
-				} else if( curop == Opcode.PONG ) {
-					wsl.onWebsocketPong( this, f );
-					continue;
-				} else if( !fin || curop == Opcode.CONTINUOUS ) {
-					if( curop != Opcode.CONTINUOUS ) {
-						if( current_continuous_frame_opcode != null )
-							throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Previous continuous frame sequence not completed." );
-						current_continuous_frame_opcode = curop;
-					} else if( fin ) {
-						if( current_continuous_frame_opcode == null )
-							throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Continuous frame sequence was not started." );
-						current_continuous_frame_opcode = null;
-					} else if( current_continuous_frame_opcode == null ) {
-						throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Continuous frame sequence was not started." );
-					}
-					try {
-						wsl.onWebsocketMessageFragment( this, f );
-					} catch ( RuntimeException e ) {
-						wsl.onWebsocketError( this, e );
-					}
-
-				} else if( current_continuous_frame_opcode != null ) {
-					throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Continuous frame sequence not completed." );
-				} else if( curop == Opcode.TEXT ) {
-					try {
-						wsl.onWebsocketMessage( this, Charsetfunctions.stringUtf8( f.getPayloadData() ) );
-					} catch ( RuntimeException e ) {
-						wsl.onWebsocketError( this, e );
-					}
-				} else if( curop == Opcode.BINARY ) {
-					try {
-						wsl.onWebsocketMessage( this, f.getPayloadData() );
-					} catch ( RuntimeException e ) {
-						wsl.onWebsocketError( this, e );
-					}
-				} else {
-					throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "non control or continious frame expected" );
-				}
-			}
+			draft.translateFrame( socketBuffer, framesink );
 		} catch ( InvalidDataException e1 ) {
 			wsl.onWebsocketError( this, e1 );
 			close( e1 );
+		}
+	}
+
+	/** Dispatches every frame as soon as the draft parsed it. The frame may be reused by the draft once this returns. */
+	private void decodeFrame( Framedata f ) throws InvalidDataException {
+		if( DEBUG )
+			System.out.println( "matched frame: " + f );
+		Opcode curop = f.getOpcode();
+		boolean fin = f.isFin();
+
+		if( curop == Opcode.CLOSING ) {
+			int code = CloseFrame.NOCODE;
+			String reason = "";
+			if( f instanceof CloseFrame ) {
+				CloseFrame cf = (CloseFrame) f;
+				code = cf.getCloseCode();
+				reason = cf.getMessage();
+			}
+			if( readystate == READYSTATE.CLOSING ) {
+				// complete the close handshake by disconnecting
+				closeConnection( code, reason, true );
+			} else {
+				// echo close handshake
+				if( draft.getCloseHandshakeType() == CloseHandshakeType.TWOWAY )
+					close( code, reason, true );
+				else
+					flushAndClose( code, reason, false );
+			}
+			return;
+		} else if( curop == Opcode.PING ) {
+			wsl.onWebsocketPing( this, f );
 			return;
+		} else if( curop == Opcode.PONG ) {
+			onPong( f );
+			wsl.onWebsocketPong( this, f );
+			return;
+		} else if( !fin || curop == Opcode.CONTINUOUS ) {
+			Opcode messageop = curop == Opcode.CONTINUOUS ? current_continuous_frame_opcode : curop;
+			if( curop != Opcode.CONTINUOUS ) {
+				if( current_continuous_frame_opcode != null )
+					throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Previous continuous frame sequence not completed." );
+				current_continuous_frame_opcode = curop;
+			} else if( fin ) {
+				if( current_continuous_frame_opcode == null )
+					throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Continuous frame sequence was not started." );
+				current_continuous_frame_opcode = null;
+			} else if( current_continuous_frame_opcode == null ) {
+				throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Continuous frame sequence was not started." );
+			}
+			if( streaming && messageop == Opcode.BINARY ) {
+				deliverChunk( f.getPayloadData(), fin );
+				return;
+			}
+			try {
+				wsl.onWebsocketMessageFragment( this, borrowPayloads() ? f : copyFrame( f ) );
+			} catch ( RuntimeException e ) {
+				wsl.onWebsocketError( this, e );
+			}
+
+		} else if( current_continuous_frame_opcode != null ) {
+			throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Continuous frame sequence not completed." );
+		} else if( curop == Opcode.TEXT ) {
+			try {
+				wsl.onWebsocketMessage( this, Charsetfunctions.stringUtf8( f.getPayloadData() ) );
+			} catch ( RuntimeException e ) {
+				wsl.onWebsocketError( this, e );
+			}
+		} else if( curop == Opcode.BINARY ) {
+			if( streaming ) {
+				deliverChunk( f.getPayloadData(), true );
+				return;
+			}
+			try {
+				ByteBuffer payload = f.getPayloadData();
+				wsl.onWebsocketMessage( this, borrowPayloads() ? payload : FramedataImpl1.retain( payload ) );
+			} catch ( RuntimeException e ) {
+				wsl.onWebsocketError( this, e );
+			}
+		} else {
+			throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "non control or continious frame expected" );
+		}
+	}
+
+	/** Returns a copy of <var>f</var>, which the draft may reuse, with a payload which does not belong to the receive buffer */
+	private static Framedata copyFrame( Framedata f ) throws InvalidDataException {
+		FramedataImpl1 copy = new FramedataImpl1( f );
+		copy.setPayload( FramedataImpl1.retain( f.getPayloadData() ) );
+		return copy;
+	}
+
+	private void deliverChunk( ByteBuffer chunk, boolean last ) {
+		try {
+			wsl.onWebsocketMessageChunk( this, borrowPayloads() ? chunk : FramedataImpl1.retain( chunk ), last );
+		} catch ( RuntimeException e ) {
+			wsl.onWebsocketError( this, e );
 		}
 	}
 
@@ -428,7 +539,11 @@ public class WebSocketImpl implements WebSocket {
 			}
 			if( code == CloseFrame.PROTOCOL_ERROR )// this endpoint found a PROTOCOL_ERROR
 				flushAndClose( code, message, remote );
-			readystate = READYSTATE.CLOSING;
+			synchronized ( this ) {
+				// the selector thread may already have closed the connection after the outgoing frames got flushed
+				if( readystate != READYSTATE.CLOSED )
+					readystate = READYSTATE.CLOSING;
+			}
 			tmpHandshakeBytes = null;
 			return;
 		}
@@ -478,7 +593,12 @@ public class WebSocketImpl implements WebSocket {
 		handshakerequest = null;
 
 		readystate = READYSTATE.CLOSED;
-		this.outQueue.clear();
+		clearQueued();
+		if( blockedsenders > 0 ) {
+			synchronized ( outQueue ) {
+				outQueue.notifyAll();
+			}
+		}
 	}
 
 	protected void closeConnection( int code, boolean remote ) {
@@ -587,6 +707,26 @@ public class WebSocketImpl implements WebSocket {
 		send( draft.continuousFrame( op, buffer, fin ) );
 	}
 
+	/**
+	 * Queues a frame which has already been encoded by a draft like the one of this connection, e.g. so that the same bytes can be sent to many connections.<br>
+	 * The buffer is queued as it is. Every connection therefore needs its own duplicate of shared bytes.
+	 */
+	public void sendEncodedFrame( ByteBuffer frame ) {
+		if( !isOpen() )
+			throw new WebsocketNotConnectedException();
+		write( frame );
+	}
+
+	/**
+	 * Like {@link #sendEncodedFrame(ByteBuffer)} but does not tell the listener about the write demand.<br>
+	 * Lets the caller queue frames for many connections and announce them in one go. The caller must call {@link WebSocketListener#onWriteDemand(WebSocket)} or do its equivalent afterwards.
+	 */
+	public void enqueueEncodedFrame( ByteBuffer frame ) {
+		if( !isOpen() )
+			throw new WebsocketNotConnectedException();
+		enqueue( frame );
+	}
+
 	@Override
 	public void sendFrame( Framedata framedata ) {
 		if( DEBUG )
@@ -594,11 +734,236 @@ public class WebSocketImpl implements WebSocket {
 		write( draft.createBinaryFrame( framedata ) );
 	}
 
+	/**
+	 * Sends a ping whose payload is the current {@link System#nanoTime()}. The pong which echoes it updates the {@link #getLastRoundTripTime(TimeUnit) round-trip time}.<br>
+	 * Until then {@link #getPingSentTime()} returns the timestamp of the ping.
+	 */
+	public void sendTimestampPing() {
+		long now = System.nanoTime();
+		if( now == 0 )
+			now = 1; // 0 means that no ping is outstanding
+		ByteBuffer payload = ByteBuffer.allocate( 8 );
+		payload.putLong( now );
+		payload.flip();
+		FramedataImpl1 ping = new FramedataImpl1( Opcode.PING );
+		ping.setFin( true );
+		try {
+			ping.setPayload( payload );
+		} catch ( InvalidDataException e ) {
+			throw new RuntimeException( e ); // 8 bytes are always a valid control frame payload
+		}
+		pingsent = now;
+		sendFrame( ping );
+	}
+
+	/** Returns the timestamp of the ping sent by {@link #sendTimestampPing()} which has not been answered yet or 0. */
+	public long getPingSentTime() {
+		return pingsent;
+	}
+
+	/** Measures the round-trip time if <var>pong</var> answers the outstanding timestamped ping. */
+	private void onPong( Framedata pong ) {
+		long sent = pingsent;
+		ByteBuffer payload = pong.getPayloadData();
+		if( sent == 0 || payload.remaining() != 8 || payload.getLong( payload.position() ) != sent )
+			return;
+		long rtt = System.nanoTime() - sent;
+		pingsent = 0;
+		lastrtt = rtt;
+		long avg = avgrtt;
+		// smoothed like the RTT estimate of TCP
+		avgrtt = avg < 0 ? rtt : avg + ( rtt - avg ) / 8;
+	}
+
+	@Override
+	public long getLastRoundTripTime( TimeUnit unit ) {
+		long rtt = lastrtt;
+		return rtt < 0 ? -1 : unit.convert( rtt, TimeUnit.NANOSECONDS );
+	}
+
+	@Override
+	public long getAverageRoundTripTime( TimeUnit unit ) {
+		long rtt = avgrtt;
+		return rtt < 0 ? -1 : unit.convert( rtt, TimeUnit.NANOSECONDS );
+	}
+
 	@Override
 	public boolean hasBufferedData() {
 		return !this.outQueue.isEmpty();
 	}
 
+	@Override
+	public long getBufferedAmount() {
+		return bufferedamount.get();
+	}
+
+	@Override
+	public boolean isWritable() {
+		return writable;
+	}
+
+	@Override
+	public void setWriteBufferWatermarks( long low, long high ) {
+		if( low < 0 || high < low )
+			throw new IllegalArgumentException( "the watermarks must satisfy 0 <= low <= high" );
+		synchronized ( writabilitylock ) {
+			lowwatermark = low;
+			highwatermark = high;
+		}
+		updateWritability();
+	}
+
+	/**
+	 * Limits the {@link #getBufferedAmount() buffered amount} of this connection to <var>maxbufferedamount</var> bytes and lets <var>policy</var> decide what happens to messages which would exceed it.<br>
+	 * A null policy lifts the limit.
+	 */
+	public void setSlowConsumerPolicy( SlowConsumerPolicy policy, long maxbufferedamount ) {
+		if( maxbufferedamount < 0 )
+			throw new IllegalArgumentException( "the limit must not be negative" );
+		this.maxbufferedamount = policy == null ? Long.MAX_VALUE : maxbufferedamount;
+		this.slowconsumerpolicy = policy;
+	}
+
+	/**
+	 * Lets binary messages and fragments be delivered with payloads which are read only views of the receive buffer instead of copies of them. That saves copying every received byte once, which matters for large binary messages.<br>
+	 * Such a payload is only valid until the callback it has been passed to returns, since the receive buffer is reused afterwards. Callbacks which need the data later have to pass the buffer to {@link FramedataImpl1#retain(ByteBuffer)}, for fragments together with a copy of the frame.<br>
+	 * Payloads are always copied if the callbacks of the connection are run by an application executor, see {@link org.java_websocket.server.WebSocketServer#setApplicationExecutor(java.util.concurrent.Executor, int)}. Text messages are decoded before they are delivered and do not need to be copied either way.<br>
+	 * Disabled by default.
+	 */
+	public void setZeroCopyPayloads( boolean zerocopy ) {
+		this.zerocopy = zerocopy;
+	}
+
+	public boolean isZeroCopyPayloads() {
+		return zerocopy;
+	}
+
+	/**
+	 * Lets binary messages be delivered to {@link WebSocketListener#onWebsocketMessageChunk(WebSocket, ByteBuffer, boolean)} in chunks as they are received instead of as a whole. A frame which is not contained in one receive buffer is passed on in pieces, unmasked in place, so that the memory needed for a message is bounded by the receive buffer instead of the size of the message. Fragmented binary messages are delivered as chunks too.<br>
+	 * The chunks are copied unless {@link #setZeroCopyPayloads(boolean) zero copy payloads} are enabled. Text messages are still delivered as a whole.<br>
+	 * Has to be set before the connection opens. Disabled by default.
+	 */
+	public void setStreamingMessages( boolean streaming ) {
+		this.streaming = streaming;
+	}
+
+	public boolean isStreamingMessages() {
+		return streaming;
+	}
+
+	/** Returns whether received payloads may be handed to the listener without copying them out of the receive buffer. */
+	private boolean borrowPayloads() {
+		return zerocopy && mailbox == null;
+	}
+
+	public SlowConsumerPolicy getSlowConsumerPolicy() {
+		return slowconsumerpolicy;
+	}
+
+	public long getMaxBufferedAmount() {
+		return maxbufferedamount;
+	}
+
+	/**
+	 * Must be called by the thread which writes the {@link #outQueue} to the socket for every write, with the number of bytes taken from the queued buffers.
+	 */
+	public void onBytesWritten( long bytes ) {
+		if( bytes > 0 )
+			release( bytes );
+	}
+
+	private void release( long bytes ) {
+		if( bufferedamount.addAndGet( -bytes ) <= lowwatermark && !writable )
+			updateWritability();
+		if( blockedsenders > 0 ) {
+			synchronized ( outQueue ) {
+				outQueue.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest discardable frames from the {@link #outQueue} until at least <var>bytes</var> bytes have been freed or there are no more.<br>
+	 * The head of the queue is left alone since it may already be partially written.
+	 * 
+	 * @return the number of bytes freed
+	 */
+	long discardQueued( long bytes ) {
+		Draft d = draft;
+		if( d == null )
+			return 0;
+		long freed = 0;
+		synchronized ( outQueue ) {
+			Iterator<ByteBuffer> it = outQueue.iterator();
+			if( it.hasNext() )
+				it.next();
+			while ( freed < bytes && it.hasNext() ) {
+				ByteBuffer b = it.next();
+				if( d.isDiscardableFrame( b ) ) {
+					it.remove();
+					freed += b.remaining();
+				}
+			}
+		}
+		if( freed > 0 )
+			release( freed );
+		return freed;
+	}
+
+	/**
+	 * Removes all buffers from the {@link #outQueue} and subtracts them from the {@link #getBufferedAmount() buffered amount}, e.g. because the connection has been closed or its key cancelled.
+	 */
+	public void clearQueued() {
+		long freed = 0;
+		synchronized ( outQueue ) {
+			ByteBuffer b;
+			while ( ( b = outQueue.poll() ) != null ) {
+				freed += b.remaining();
+			}
+		}
+		if( freed > 0 )
+			release( freed );
+	}
+
+	/**
+	 * Waits until the {@link #getBufferedAmount() buffered amount} is not larger than <var>amount</var>.
+	 * 
+	 * @return false if the timeout elapsed or the connection has been closed before
+	 */
+	boolean awaitBufferedAmount( long amount, long timeoutnanos ) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutnanos;
+		synchronized ( outQueue ) {
+			blockedsenders++;
+			try {
+				while ( bufferedamount.get() > amount ) {
+					long left = deadline - System.nanoTime();
+					if( left <= 0 || readystate == READYSTATE.CLOSED )
+						return false;
+					TimeUnit.NANOSECONDS.timedWait( outQueue, left );
+				}
+				return true;
+			} finally {
+				blockedsenders--;
+			}
+		}
+	}
+
+	private void updateWritability() {
+		if( writable ? bufferedamount.get() <= highwatermark : bufferedamount.get() > lowwatermark )
+			return;
+		synchronized ( writabilitylock ) {
+			long amount = bufferedamount.get();
+			if( writable ? amount <= highwatermark : amount > lowwatermark )
+				return;
+			writable = !writable;
+			try {
+				wsl.onWebsocketWritabilityChanged( this, writable );
+			} catch ( RuntimeException e ) {
+				wsl.onWebsocketError( this, e );
+			}
+		}
+	}
+
 	private HandshakeState isFlashEdgeCase( ByteBuffer request ) throws IncompleteHandshakeException {
 		request.mark();
 		if( request.limit() > Draft.FLASH_POLICY_REQUEST.length ) {
@@ -642,10 +1007,25 @@ public class WebSocketImpl implements WebSocket {
 	}
 
 	private void write( ByteBuffer buf ) {
+		if( enqueue( buf ) )
+			wsl.onWriteDemand( this );
+	}
+
+	/** @return false if the buffer has been discarded by the {@link SlowConsumerPolicy} */
+	private boolean enqueue( ByteBuffer buf ) {
 		if( DEBUG )
-			System.out.println( "write(" + buf.remaining() + "): {" + ( buf.remaining() > 1000 ? "too big to display" : new String( buf.array() ) ) + "}" );
+			System.out.println( "write(" + buf.remaining() + "): {" + ( buf.remaining() > 1000 ? "too big to display" : Charsetfunctions.stringAscii( buf ) ) + "}" );
 
+		SlowConsumerPolicy policy = slowconsumerpolicy;
+		if( policy != null && bufferedamount.get() + buf.remaining() > maxbufferedamount && draft != null && draft.isDiscardableFrame( buf ) ) {
+			if( !policy.onLimitExceeded( this, buf, maxbufferedamount ) )
+				return false;
+		}
+		// counted before the buffer is queued, so that the writer never takes off more than has been added
+		long amount = bufferedamount.addAndGet( buf.remaining() );
 		outQueue.add( buf );
+		if( amount > highwatermark && writable )
+			updateWritability();
 		/*try {
 			outQueue.put( buf );
 		} catch ( InterruptedException e ) {
@@ -653,7 +1033,7 @@ public class WebSocketImpl implements WebSocket {
 			Thread.currentThread().interrupt(); // keep the interrupted status
 			e.printStackTrace();
 		}*/
-		wsl.onWriteDemand( this );
+		return true;
 	}
 
 	private void write( List<ByteBuffer> bufs ) {
@@ -666,6 +1046,7 @@ public class WebSocketImpl implements WebSocket {
 		if( DEBUG )
 			System.out.println( "open using draft: " + draft.getClass().getSimpleName() );
 		readystate = READYSTATE.OPEN;
+		draft.setStreaming( streaming );
 		try {
 			wsl.onWebsocketOpen( this, d );
 		} catch ( RuntimeException e ) {
@@ -742,4 +1123,107 @@ public class WebSocketImpl implements WebSocket {
 		return resourceDescriptor;
 	}
 
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T getAttachment() {
+		return (T) attachment;
+	}
+
+	@Override
+	public <T> void setAttachment( T attachment ) {
+		this.attachment = attachment;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T getAttribute( AttributeKey<T> key ) {
+		AtomicReferenceArray<Object> a = attributes;
+		int i = key.index();
+		return a != null && i < a.length() ? (T) a.get( i ) : null;
+	}
+
+	@Override
+	public <T> void setAttribute( AttributeKey<T> key, T value ) {
+		AtomicReferenceArray<Object> a = attributesFor( key );
+		while ( true ) {
+			synchronized ( a ) {
+				// a set on an array which has been replaced meanwhile would get lost
+				if( attributes == a ) {
+					a.set( key.index(), value );
+					return;
+				}
+			}
+			a = attributesFor( key );
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T setAttributeIfAbsent( AttributeKey<T> key, T value ) {
+		T existing = getAttribute( key );
+		if( existing != null )
+			return existing;
+		AtomicReferenceArray<Object> a = attributesFor( key );
+		while ( true ) {
+			synchronized ( a ) {
+				if( attributes == a ) {
+					existing = (T) a.get( key.index() );
+					if( existing == null )
+						a.set( key.index(), value );
+					return existing;
+				}
+			}
+			a = attributesFor( key );
+		}
+	}
+
+	/** Returns the current attribute array after making sure that it has a slot for <var>key</var>. */
+	private AtomicReferenceArray<Object> attributesFor( AttributeKey<?> key ) {
+		while ( true ) {
+			AtomicReferenceArray<Object> a = attributes;
+			if( a == null ) {
+				AtomicReferenceArray<Object> n = new AtomicReferenceArray<Object>( Math.max( Math.max( ATTRIBUTE_SLOTS, AttributeKey.count() ), key.index() + 1 ) );
+				if( ATTRIBUTES.compareAndSet( this, null, n ) )
+					return n;
+				continue;
+			}
+			if( key.index() < a.length() )
+				return a;
+			synchronized ( a ) {
+				if( attributes != a )
+					continue;
+				AtomicReferenceArray<Object> n = new AtomicReferenceArray<Object>( Math.max( Math.max( ATTRIBUTE_SLOTS, AttributeKey.count() ), key.index() + 1 ) );
+				for( int i = 0 ; i < a.length() ; i++ ) {
+					n.set( i, a.get( i ) );
+				}
+				attributes = n;
+				return n;
+			}
+		}
+	}
+
+	/**
+	 * Returns the id the server assigned to this connection when it was accepted, or 0 if none has been assigned.<br>
+	 * Ids are unique per server and never reused.
+	 *
+	 * @see org.java_websocket.server.WebSocketServer#getConnection(long)
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Assigns the id of this connection. Called by the server which accepted it.
+	 *
+	 * @throws IllegalStateException
+	 *             if an id has already been assigned
+	 */
+	public void setId( long id ) {
+		if( id == 0 )
+			throw new IllegalArgumentException( "the id 0 means unassigned" );
+		if( this.id != 0 )
+			throw new IllegalStateException( "the id has already been assigned" );
+		this.id = id;
+	}
+
 }
@@ -14,7 +14,8 @@ import org.java_websocket.handshake.ServerHandshakeBuilder;
 /**
  * Implemented by <tt>WebSocketClient</tt> and <tt>WebSocketServer</tt>.
  * The methods within are called by <tt>WebSocket</tt>.
- * Almost every method takes a first parameter conn which represents the source of the respective event.
+ * Almost every method takes a first parameter conn which represents the source of the respective event.<br>
+ * <b>Incompatible with 1.3.0:</b> {@link #onWebsocketMessageChunk(WebSocket, ByteBuffer, boolean)} and {@link #onWebsocketWritabilityChanged(WebSocket, boolean)} have been added. Listeners which do not extend {@link WebSocketAdapter} have to implement them.
  */
 public interface WebSocketListener {
 
@@ -87,6 +88,16 @@ public interface WebSocketListener {
 
 	public void onWebsocketMessageFragment( WebSocket conn, Framedata frame );
 
+	/**
+	 * Called instead of <var>onWebsocketMessage</var> and <var>onWebsocketMessageFragment</var> for binary messages if the connection streams them, see {@link WebSocketImpl#setStreamingMessages(boolean)}.
+	 * 
+	 * @param chunk
+	 *            The next bytes of the message as they were received, possibly none.
+	 * @param last
+	 *            Whether this is the end of the message.
+	 */
+	public void onWebsocketMessageChunk( WebSocket conn, ByteBuffer chunk, boolean last );
+
 	/**
 	 * Called after <var>onHandshakeReceived</var> returns <var>true</var>.
 	 * Indicates that a complete WebSocket connection has been established,
@@ -127,12 +138,13 @@ public interface WebSocketListener {
 	 * This method must send a corresponding pong by itself.
 	 * 
 	 * @param f
-	 *            The ping frame. Control frames may contain payload.
+	 *            The ping frame. Control frames may contain payload. The frame is only valid until this method returns; see {@link org.java_websocket.framing.FramedataImpl1#retain(ByteBuffer)}.
 	 */
 	public void onWebsocketPing( WebSocket conn, Framedata f );
 
 	/**
 	 * Called when a pong frame is received.
+	 * The frame is only valid until this method returns; see {@link org.java_websocket.framing.FramedataImpl1#retain(ByteBuffer)}.
 	 **/
 	public void onWebsocketPong( WebSocket conn, Framedata f );
 
@@ -146,6 +158,14 @@ public interface WebSocketListener {
 	/** This method is used to inform the selector thread that there is data queued to be written to the socket. */
 	public void onWriteDemand( WebSocket conn );
 
+	/**
+	 * Called when the buffered amount of <var>conn</var> crossed one of its write buffer watermarks.<br>
+	 * The change to unwritable is reported by the thread which queued the data, the change back to writable by the thread which wrote it to the socket.
+	 * 
+	 * @see WebSocket#setWriteBufferWatermarks(long, long)
+	 */
+	public void onWebsocketWritabilityChanged( WebSocket conn, boolean writable );
+
 	public InetSocketAddress getLocalSocketAddress( WebSocket conn );
 	public InetSocketAddress getRemoteSocketAddress( WebSocket conn );
 }
@@ -14,8 +14,11 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.java_websocket.AttributeKey;
 import org.java_websocket.WebSocket;
 import org.java_websocket.WebSocketAdapter;
 import org.java_websocket.WebSocketFactory;
@@ -65,6 +68,10 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 
 	private int connectTimeout = 0;
 
+	/** see {@link #setHeartbeat(long, long, TimeUnit)}; in nanoseconds, 0 when disabled */
+	private long heartbeatinterval = 0;
+	private long pongtimeout = 0;
+
 	/** This open a websocket connection as specified by rfc6455 */
 	public WebSocketClient( URI serverURI ) {
 		this( serverURI, new Draft_17() );
@@ -268,6 +275,11 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 		onFragment( frame );
 	}
 
+	@Override
+	public final void onWebsocketMessageChunk( WebSocket conn, ByteBuffer chunk, boolean last ) {
+		onMessageChunk( chunk, last );
+	}
+
 	/**
 	 * Calls subclass' implementation of <var>onOpen</var>.
 	 */
@@ -308,6 +320,14 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 		// nothing to do
 	}
 
+	/**
+	 * Calls subclass' implementation of <var>onWritabilityChanged</var>.
+	 */
+	@Override
+	public final void onWebsocketWritabilityChanged( WebSocket conn, boolean writable ) {
+		onWritabilityChanged( writable );
+	}
+
 	@Override
 	public void onWebsocketCloseInitiated( WebSocket conn, int code, String reason ) {
 		onCloseInitiated( code, reason );
@@ -324,6 +344,14 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 	public void onClosing( int code, String reason, boolean remote ) {
 	}
 
+	/**
+	 * Called when the amount of queued but not yet sent data crossed one of the write buffer watermarks.
+	 * 
+	 * @see WebSocket#setWriteBufferWatermarks(long, long)
+	 */
+	public void onWritabilityChanged( boolean writable ) {
+	}
+
 	public WebSocket getConnection() {
 		return engine;
 	}
@@ -351,16 +379,39 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 	}
 	public void onFragment( Framedata frame ) {
 	}
+	/** @see WebSocketImpl#setStreamingMessages(boolean) */
+	public void onMessageChunk( ByteBuffer chunk, boolean last ) {
+	}
 
 	private class WebsocketWriteThread implements Runnable {
 		@Override
 		public void run() {
 			Thread.currentThread().setName( "WebsocketWriteThread" );
+			Random jitter = new Random();
+			if( heartbeatinterval > 0 )
+				engine.nextping = System.nanoTime() + (long) ( jitter.nextDouble() * heartbeatinterval );
+			long nextheartbeat = engine.nextping;
 			try {
 				while ( !Thread.interrupted() ) {
-					ByteBuffer buffer = engine.outQueue.take();
+					if( heartbeatinterval > 0 && System.nanoTime() - nextheartbeat >= 0 )
+						nextheartbeat = heartbeat( System.nanoTime(), jitter );
+					ByteBuffer buffer;
+					synchronized ( engine.outQueue ) {
+						buffer = engine.outQueue.poll(); // see WebSocketImpl#outQueue
+					}
+					if( buffer == null ) {
+						// a buffer queued while this thread waits is at the head, which is never discarded
+						if( heartbeatinterval == 0 ) {
+							buffer = engine.outQueue.take();
+						} else {
+							buffer = engine.outQueue.poll( Math.max( 0, nextheartbeat - System.nanoTime() ), TimeUnit.NANOSECONDS );
+							if( buffer == null )
+								continue;
+						}
+					}
 					ostream.write( buffer.array(), 0, buffer.limit() );
 					ostream.flush();
+					engine.onBytesWritten( buffer.remaining() );
 				}
 			} catch ( IOException e ) {
 				engine.eot();
@@ -370,6 +421,55 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 		}
 	}
 
+	/**
+	 * Makes this client ping the server every <var>interval</var> and close the connection if a ping has not been answered within <var>timeout</var>. 0 disables the heartbeat, which is the default.<br>
+	 * Every ping carries a timestamp, so that the pong yields the {@link #getLastRoundTripTime(TimeUnit) round-trip time}. The first ping is sent after a random part of the interval and the later ones at intervals which randomly vary by 10%, so that many clients do not ping in bursts.<br>
+	 * The pings are sent by the thread which writes the outgoing frames. Must be called before the client connects.
+	 * 
+	 * @throws IllegalStateException
+	 *             when the client has already been started
+	 */
+	public void setHeartbeat( long interval, long timeout, TimeUnit unit ) {
+		if( interval < 0 || timeout < 0 || ( interval > 0 && timeout == 0 ) )
+			throw new IllegalArgumentException( "the interval must not be negative and a heartbeat needs a positive timeout" );
+		if( writeThread != null )
+			throw new IllegalStateException( "the heartbeat can not be changed after the client has been started" );
+		this.heartbeatinterval = unit.toNanos( interval );
+		this.pongtimeout = unit.toNanos( timeout );
+	}
+
+	/**
+	 * Sends the next ping or closes the connection if the last one has not been answered in time.
+	 * 
+	 * @return the {@link System#nanoTime()} at which this method has to be called again
+	 */
+	private long heartbeat( long now, Random jitter ) {
+		if( engine.isFlushAndClose() ) {
+			// the close frame could not be written within the timeout
+			if( now - engine.nextping >= 0 )
+				engine.closeConnection( CloseFrame.ABNORMAL_CLOSE, "timed out while closing" );
+			return engine.nextping;
+		}
+		long sent = engine.getPingSentTime();
+		if( sent != 0 ) {
+			if( now - sent < pongtimeout ) {
+				// the pong may arrive before the timeout and the next ping be due earlier
+				long next = engine.nextping;
+				return next - now > 0 && next - ( sent + pongtimeout ) < 0 ? next : sent + pongtimeout;
+			}
+			engine.close( CloseFrame.GOING_AWAY, "pong timeout" );
+			engine.nextping = now + pongtimeout;
+			return engine.nextping;
+		}
+		if( now - engine.nextping >= 0 ) {
+			if( engine.isOpen() )
+				engine.sendTimestampPing();
+			engine.nextping = now + heartbeatinterval - heartbeatinterval / 10 + (long) ( jitter.nextDouble() * heartbeatinterval / 5 );
+		}
+		sent = engine.getPingSentTime();
+		return sent != 0 && sent + pongtimeout - engine.nextping < 0 ? sent + pongtimeout : engine.nextping;
+	}
+
 	public void setProxy( Proxy proxy ) {
 		if( proxy == null )
 			throw new IllegalArgumentException();
@@ -423,6 +523,66 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 		return engine.hasBufferedData();
 	}
 
+	@Override
+	public long getBufferedAmount() {
+		return engine.getBufferedAmount();
+	}
+
+	@Override
+	public boolean isWritable() {
+		return engine.isWritable();
+	}
+
+	@Override
+	public void setWriteBufferWatermarks( long low, long high ) {
+		engine.setWriteBufferWatermarks( low, high );
+	}
+
+	/** @see WebSocketImpl#setZeroCopyPayloads(boolean) */
+	public void setZeroCopyPayloads( boolean zerocopy ) {
+		engine.setZeroCopyPayloads( zerocopy );
+	}
+
+	/** @see WebSocketImpl#setStreamingMessages(boolean) */
+	public void setStreamingMessages( boolean streaming ) {
+		engine.setStreamingMessages( streaming );
+	}
+
+	@Override
+	public long getLastRoundTripTime( TimeUnit unit ) {
+		return engine.getLastRoundTripTime( unit );
+	}
+
+	@Override
+	public long getAverageRoundTripTime( TimeUnit unit ) {
+		return engine.getAverageRoundTripTime( unit );
+	}
+
+	@Override
+	public <T> T getAttachment() {
+		return engine.getAttachment();
+	}
+
+	@Override
+	public <T> void setAttachment( T attachment ) {
+		engine.setAttachment( attachment );
+	}
+
+	@Override
+	public <T> T getAttribute( AttributeKey<T> key ) {
+		return engine.getAttribute( key );
+	}
+
+	@Override
+	public <T> void setAttribute( AttributeKey<T> key, T value ) {
+		engine.setAttribute( key, value );
+	}
+
+	@Override
+	public <T> T setAttributeIfAbsent( AttributeKey<T> key, T value ) {
+		return engine.setAttributeIfAbsent( key, value );
+	}
+
 	@Override
 	public void close( int code ) {
 		engine.close();
@@ -51,6 +51,9 @@ public abstract class Draft {
 
 	protected Opcode continuousFrameType = null;
 
+	/** see {@link #setStreaming(boolean)} */
+	protected boolean streaming = false;
+
 	public static ByteBuffer readLine( ByteBuffer buf ) {
 		ByteBuffer sbuf = ByteBuffer.allocate( buf.remaining() );
 		byte prev = '0';
@@ -199,8 +202,32 @@ public abstract class Draft {
 
 	public abstract List<Framedata> translateFrame( ByteBuffer buffer ) throws InvalidDataException;
 
+	/** Receives the frames parsed by {@link Draft#translateFrame(ByteBuffer, FrameSink)} as soon as each of them is complete. */
+	public interface FrameSink {
+		public void onFrame( Framedata frame ) throws InvalidDataException;
+	}
+
+	/**
+	 * Parses the frames in <var>buffer</var> like {@link #translateFrame(ByteBuffer)}, but passes each of them to <var>sink</var> instead of collecting them in a list.<br>
+	 * Drafts may reuse the frame objects for the following frames and hand out payloads which are views of <var>buffer</var>, which they may have changed in place. So a frame is only valid until <var>sink</var> returns; see {@link org.java_websocket.framing.FramedataImpl1#retain(ByteBuffer)}.<br>
+	 * This default implementation passes on the frames returned by {@link #translateFrame(ByteBuffer)}.
+	 */
+	public void translateFrame( ByteBuffer buffer, FrameSink sink ) throws InvalidDataException {
+		for( Framedata f : translateFrame( buffer ) ) {
+			sink.onFrame( f );
+		}
+	}
+
 	public abstract CloseHandshakeType getCloseHandshakeType();
 
+	/**
+	 * Returns whether <var>frame</var>, a buffer created by {@link #createBinaryFrame(Framedata)}, holds a complete text or binary message which may be left out without breaking the stream of frames.<br>
+	 * Control frames and the frames of fragmented messages are not discardable. This default implementation considers no frame discardable.
+	 */
+	public boolean isDiscardableFrame( ByteBuffer frame ) {
+		return false;
+	}
+
 	/**
 	 * Drafts must only be by one websocket at all. To prevent drafts to be used more than once the Websocket implementation should call this method in order to create a new usable version of a given draft instance.<br>
 	 * The copy can be safely used in conjunction with a new websocket connection.
@@ -220,6 +247,18 @@ public abstract class Draft {
 	public void setParseMode( Role role ) {
 		this.role = role;
 	}
+
+	/**
+	 * Lets {@link #translateFrame(ByteBuffer, FrameSink)} pass the payload of a binary frame, which is not contained in the buffer as a whole, in pieces as it arrives instead of collecting it first. The pieces are passed like the fragments of a message: the first keeps the opcode of the frame, the others are continuous frames and only the last one keeps the fin bit.<br>
+	 * Drafts which do not support that ignore it.
+	 */
+	public void setStreaming( boolean streaming ) {
+		this.streaming = streaming;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
 	
 	public Role getRole() {
 		return role;
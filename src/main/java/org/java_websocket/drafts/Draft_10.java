@@ -1,6 +1,6 @@
 package org.java_websocket.drafts;
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
@@ -30,22 +30,6 @@ import org.java_websocket.util.Charsetfunctions;
 
 public class Draft_10 extends Draft {
 
-	private class IncompleteException extends Throwable {
-
-		/**
-		 * It's Serializable.
-		 */
-		private static final long serialVersionUID = 7330519489840500997L;
-
-		private int preferedsize;
-		public IncompleteException( int preferedsize ) {
-			this.preferedsize = preferedsize;
-		}
-		public int getPreferedSize() {
-			return preferedsize;
-		}
-	}
-
 	public static int readVersion( Handshakedata handshakedata ) {
 		String vers = handshakedata.getFieldValue( "Sec-WebSocket-Version" );
 		if( vers.length() > 0 ) {
@@ -60,9 +44,40 @@ public class Draft_10 extends Draft {
 		return -1;
 	}
 
+	/** The parts of a frame {@link #translateSingleFrame(ByteBuffer)} can be waiting for */
+	private static final int HEADER = 0, LENGTH = 1, MASKKEY = 2, PAYLOAD = 3;
+
+	/** The state of the frame which is being parsed. It is kept across reads, so that frames may be split at any byte. */
+	private int state = HEADER;
+	/** The number of bytes which are missing from the header, the extended length or the mask key */
+	private int needed = 2;
+	/** The bytes of the header, the extended length or the mask key which have been read so far */
+	private long accumulator = 0;
+	private boolean fin;
+	private Opcode optcode;
+	private boolean masked;
+	private int maskkey;
+	private int payloadlength;
+	/** The number of payload bytes of the current frame which have already been passed on in pieces, see {@link #setStreaming(boolean)} */
+	private int streamed;
+	/** Whether the message the current data frame belongs to is a binary one */
+	private boolean binarymessage;
+	/** The payload of a frame which did not arrive in one piece, allocated in its final size once its length is known */
 	private ByteBuffer incompleteframe;
 	private Framedata fragmentedframe = null;
 
+	/** The largest payload for which {@link #reassembly} is kept, so that a connection does not hold on to the buffer of one big frame */
+	private static final int REASSEMBLY_KEEP = 16384;
+
+	/** The frame {@link #translateFrame(ByteBuffer, FrameSink)} passes every data and ping or pong frame in */
+	private final FramedataImpl1 reusableframe = new FramedataImpl1();
+	/** A read only view of the buffer {@link #viewed}, which is reused for the payloads of the frames in it */
+	private ByteBuffer view;
+	private ByteBuffer viewed;
+	/** Collects the payloads of reused frames which did not arrive in one piece, unless they are larger than {@link #REASSEMBLY_KEEP} */
+	private ByteBuffer reassembly;
+	private ByteBuffer reassemblyview;
+
 	private final Random reuseableRandom = new Random();
 
 	@Override
@@ -113,12 +128,11 @@ public class Draft_10 extends Draft {
 			throw new RuntimeException( "Size representation not supported/specified" );
 
 		if( mask ) {
-			ByteBuffer maskkey = ByteBuffer.allocate( 4 );
-			maskkey.putInt( reuseableRandom.nextInt() );
-			buf.put( maskkey.array() );
-			for( int i = 0 ; mes.hasRemaining() ; i++ ) {
-				buf.put( (byte) ( mes.get() ^ maskkey.get( i % 4 ) ) );
-			}
+			int maskkey = reuseableRandom.nextInt();
+			buf.putInt( maskkey );
+			int start = buf.position();
+			buf.put( mes );
+			mask( buf, start, buf.position() - start, maskkey );
 		} else
 			buf.put( mes );
 		// translateFrame ( buf.array () , buf.array ().length );
@@ -156,6 +170,36 @@ public class Draft_10 extends Draft {
 		return Collections.singletonList( (Framedata) curframe );
 	}
 
+	@Override
+	public boolean isDiscardableFrame( ByteBuffer frame ) {
+		if( !frame.hasRemaining() )
+			return false;
+		int b = frame.get( frame.position() ) & 0x8F; // fin and opcode
+		return b == 0x81 || b == 0x82;
+	}
+
+	/**
+	 * XORs the <var>length</var> bytes of <var>buffer</var> which start at <var>offset</var> with <var>maskkey</var>, whose most significant byte applies to the first byte. Since masking is its own inverse this masks as well as unmasks. The position and limit of the buffer are not changed.<br>
+	 * The bytes are processed eight at a time with the mask key repeated to a long and rotated to where the word starts in the payload. Single bytes are only processed up to the first index which is a multiple of eight and after the last full word. This works in place on heap and direct buffers of either byte order.
+	 */
+	public static void mask( ByteBuffer buffer, int offset, int length, int maskkey ) {
+		int end = offset + length;
+		int i = offset;
+		int head = Math.min( end, ( offset + 7 ) & ~7 );
+		for( ; i < head ; i++ )
+			buffer.put( i, (byte) ( buffer.get( i ) ^ ( maskkey >>> ( 24 - 8 * ( ( i - offset ) & 3 ) ) ) ) );
+		if( end - i >= 8 ) {
+			int rotated = Integer.rotateLeft( maskkey, 8 * ( ( i - offset ) & 3 ) );
+			long wide = (long) rotated << 32 | rotated & 0xFFFFFFFFL;
+			if( buffer.order() == ByteOrder.LITTLE_ENDIAN )
+				wide = Long.reverseBytes( wide );
+			for( ; i <= end - 8 ; i += 8 )
+				buffer.putLong( i, buffer.getLong( i ) ^ wide );
+		}
+		for( ; i < end ; i++ )
+			buffer.put( i, (byte) ( buffer.get( i ) ^ ( maskkey >>> ( 24 - 8 * ( ( i - offset ) & 3 ) ) ) ) );
+	}
+
 	private byte fromOpcode( Opcode opcode ) {
 		if( opcode == Opcode.CONTINUOUS )
 			return 0;
@@ -243,146 +287,216 @@ public class Draft_10 extends Draft {
 	public List<Framedata> translateFrame( ByteBuffer buffer ) throws LimitExedeedException , InvalidDataException {
 		List<Framedata> frames = new LinkedList<Framedata>();
 		Framedata cur;
+		while ( ( cur = nextFrame( buffer, false ) ) != null ) {
+			frames.add( cur );
+		}
+		return frames;
+	}
 
-		if( incompleteframe != null ) {
-			// complete an incomplete frame
-			while ( true ) {
-				try {
-					buffer.mark();
-					int available_next_byte_count = buffer.remaining();// The number of bytes received
-					int expected_next_byte_count = incompleteframe.remaining();// The number of bytes to complete the incomplete frame
-
-					if( expected_next_byte_count > available_next_byte_count ) {
-						// did not receive enough bytes to complete the frame
-						incompleteframe.put( buffer.array(), buffer.position(), available_next_byte_count );
-						buffer.position( buffer.position() + available_next_byte_count );
-						return Collections.emptyList();
-					}
-					incompleteframe.put( buffer.array(), buffer.position(), expected_next_byte_count );
-					buffer.position( buffer.position() + expected_next_byte_count );
-
-					cur = translateSingleFrame( (ByteBuffer) incompleteframe.duplicate().position( 0 ) );
-					frames.add( cur );
-					incompleteframe = null;
-					break; // go on with the normal frame receival
-				} catch ( IncompleteException e ) {
-					// extending as much as suggested
-					int oldsize = incompleteframe.limit();
-					ByteBuffer extendedframe = ByteBuffer.allocate( checkAlloc( e.getPreferedSize() ) );
-					assert ( extendedframe.limit() > incompleteframe.limit() );
-					incompleteframe.rewind();
-					extendedframe.put( incompleteframe );
-					incompleteframe = extendedframe;
-					
-					return translateFrame( buffer );
-				}
-			}
+	/**
+	 * Passes every frame to <var>sink</var> in the same frame object and, as long as the frames are read from the same buffer, with the same read only view of it as payload. The payloads are unmasked in place, so the content of <var>buffer</var> is changed. Only close frames are passed in frames of their own.<br>
+	 * That way parsing does not allocate for frames which are contained in <var>buffer</var> as a whole. Split frames of up to {@link #REASSEMBLY_KEEP} bytes are collected in a buffer which is reused as well, unless they are binary ones and {@link #setStreaming(boolean) streaming} is enabled.
+	 */
+	@Override
+	public void translateFrame( ByteBuffer buffer, FrameSink sink ) throws InvalidDataException {
+		Framedata cur;
+		while ( ( cur = nextFrame( buffer, true ) ) != null ) {
+			sink.onFrame( cur );
 		}
+	}
 
-		while ( buffer.hasRemaining() ) {// Read as much as possible full frames
-			buffer.mark();
-			try {
-				cur = translateSingleFrame( buffer );
-				frames.add( cur );
-			} catch ( IncompleteException e ) {
-				// remember the incomplete data
-				buffer.reset();
-				int pref = e.getPreferedSize();
-				incompleteframe = ByteBuffer.allocate( checkAlloc( pref ) );
-				incompleteframe.put( buffer );
-				break;
+	/**
+	 * Parses the frame at the position of <var>buffer</var> or continues the one an earlier call could not complete.<br>
+	 * Every frame gets a payload of its own and <var>buffer</var> is left as it is, apart from its position.<br>
+	 * <b>Incompatible with 1.3.0:</b> an incomplete frame used to be reported with an exception and had to be passed again as a whole once it was complete. Now the bytes of an incomplete frame are consumed and kept, null is returned and the next call has to be passed the bytes which follow them. The frame is shared with {@link #translateFrame(ByteBuffer)} and reset by {@link #reset()}.
+	 * 
+	 * @return the next complete frame or null if all of <var>buffer</var> has been consumed without completing one
+	 */
+	public Framedata translateSingleFrame( ByteBuffer buffer ) throws InvalidDataException {
+		return nextFrame( buffer, false );
+	}
+
+	/**
+	 * @param reuse
+	 *            whether the frame may be passed in {@link #reusableframe} with a payload from {@link #view} or {@link #reassemblyview}
+	 */
+	private Framedata nextFrame( ByteBuffer buffer, boolean reuse ) throws InvalidDataException {
+		while ( true ) {
+			if( state == PAYLOAD )
+				return readPayload( buffer, reuse );
+			if( !buffer.hasRemaining() )
+				return null;
+			accumulator = accumulator << 8 | ( buffer.get() & 0xFF );
+			if( --needed > 0 )
+				continue;
+			long value = accumulator;
+			accumulator = 0;
+			if( state == HEADER ) {
+				readHeader( (int) value );
+			} else if( state == LENGTH ) {
+				readLength( value );
+			} else {
+				maskkey = (int) value;
+				state = PAYLOAD;
 			}
 		}
-		return frames;
 	}
 
-	public Framedata translateSingleFrame( ByteBuffer buffer ) throws IncompleteException , InvalidDataException {
-		int maxpacketsize = buffer.remaining();
-		int realpacketsize = 2;
-		if( maxpacketsize < realpacketsize )
-			throw new IncompleteException( realpacketsize );
-		byte b1 = buffer.get( /*0*/);
-		boolean FIN = b1 >> 8 != 0;
-		byte rsv = (byte) ( ( b1 & ~(byte) 128 ) >> 4 );
+	private void readHeader( int header ) throws InvalidDataException {
+		int b1 = header >> 8;
+		int b2 = header & 0xFF;
+		int rsv = ( b1 & 0x70 ) >> 4;
 		if( rsv != 0 )
 			throw new InvalidFrameException( "bad rsv " + rsv );
-		byte b2 = buffer.get( /*1*/);
-		boolean MASK = ( b2 & -128 ) != 0;
-		int payloadlength = (byte) ( b2 & ~(byte) 128 );
-		Opcode optcode = toOpcode( (byte) ( b1 & 15 ) );
-
-		if( !FIN ) {
-			if( optcode == Opcode.PING || optcode == Opcode.PONG || optcode == Opcode.CLOSING ) {
-				throw new InvalidFrameException( "control frames may no be fragmented" );
-			}
+		fin = ( b1 & 0x80 ) != 0;
+		optcode = toOpcode( (byte) ( b1 & 15 ) );
+		if( optcode == Opcode.BINARY || optcode == Opcode.TEXT )
+			binarymessage = optcode == Opcode.BINARY;
+		masked = ( b2 & 0x80 ) != 0;
+		boolean control = optcode == Opcode.PING || optcode == Opcode.PONG || optcode == Opcode.CLOSING;
+		if( !fin && control )
+			throw new InvalidFrameException( "control frames may no be fragmented" );
+		int length = b2 & 0x7F;
+		if( length <= 125 ) {
+			readLength( length );
+		} else {
+			if( control )
+				throw new InvalidFrameException( "more than 125 octets" );
+			state = LENGTH;
+			needed = length == 126 ? 2 : 8;
 		}
+	}
 
-		if( payloadlength >= 0 && payloadlength <= 125 ) {
+	private void readLength( long length ) throws InvalidDataException {
+		if( length < 0 || length > Integer.MAX_VALUE )
+			throw new LimitExedeedException( "Payloadsize is to big..." );
+		payloadlength = checkAlloc( (int) length );
+		if( masked ) {
+			state = MASKKEY;
+			needed = 4;
 		} else {
-			if( optcode == Opcode.PING || optcode == Opcode.PONG || optcode == Opcode.CLOSING ) {
-				throw new InvalidFrameException( "more than 125 octets" );
-			}
-			if( payloadlength == 126 ) {
-				realpacketsize += 2; // additional length bytes
-				if( maxpacketsize < realpacketsize )
-					throw new IncompleteException( realpacketsize );
-				byte[] sizebytes = new byte[ 3 ];
-				sizebytes[ 1 ] = buffer.get( /*1 + 1*/);
-				sizebytes[ 2 ] = buffer.get( /*1 + 2*/);
-				payloadlength = new BigInteger( sizebytes ).intValue();
+			state = PAYLOAD;
+		}
+	}
+
+	private Framedata readPayload( ByteBuffer buffer, boolean reuse ) throws InvalidDataException {
+		if( incompleteframe == null && streamed == 0 && buffer.remaining() >= payloadlength ) {
+			ByteBuffer payload;
+			if( reuse ) {
+				// unmasked in place and handed out as a read only view of the buffer, so that the payload does not have to be copied; WebSocketImpl copies it unless the connection receives zero copy payloads
+				int start = buffer.position();
+				if( masked )
+					mask( buffer, start, payloadlength, maskkey );
+				payload = view( buffer, start, payloadlength );
+				buffer.position( start + payloadlength );
 			} else {
-				realpacketsize += 8; // additional length bytes
-				if( maxpacketsize < realpacketsize )
-					throw new IncompleteException( realpacketsize );
-				byte[] bytes = new byte[ 8 ];
-				for( int i = 0 ; i < 8 ; i++ ) {
-					bytes[ i ] = buffer.get( /*1 + i*/);
-				}
-				long length = new BigInteger( bytes ).longValue();
-				if( length > Integer.MAX_VALUE ) {
-					throw new LimitExedeedException( "Payloadsize is to big..." );
-				} else {
-					payloadlength = (int) length;
+				// the frames of the list based methods may be kept by the caller, and the callers buffer stays untouched
+				payload = ByteBuffer.allocate( payloadlength );
+				buffer.get( payload.array(), 0, payloadlength );
+				if( masked )
+					mask( payload, 0, payloadlength, maskkey );
+			}
+			return completeFrame( payload, reuse );
+		}
+		if( reuse && streaming && binarymessage && ( optcode == Opcode.BINARY || optcode == Opcode.CONTINUOUS ) )
+			return readPiece( buffer );
+		if( incompleteframe == null ) {
+			if( reuse && payloadlength <= REASSEMBLY_KEEP ) {
+				if( reassembly == null || reassembly.capacity() < payloadlength ) {
+					reassembly = ByteBuffer.allocate( payloadlength );
+					reassemblyview = reassembly.asReadOnlyBuffer();
 				}
+				incompleteframe = reassembly;
+				incompleteframe.clear();
+				incompleteframe.limit( payloadlength );
+			} else {
+				incompleteframe = ByteBuffer.allocate( payloadlength );
 			}
 		}
+		int count = Math.min( buffer.remaining(), incompleteframe.remaining() );
+		// incompleteframe is a heap buffer while the buffer may be a direct one without accessible array
+		buffer.get( incompleteframe.array(), incompleteframe.arrayOffset() + incompleteframe.position(), count );
+		incompleteframe.position( incompleteframe.position() + count );
+		if( incompleteframe.hasRemaining() )
+			return null;
+		ByteBuffer payload = incompleteframe;
+		incompleteframe = null;
+		payload.flip();
+		if( masked )
+			mask( payload, 0, payloadlength, maskkey );
+		if( payload == reassembly ) {
+			// read only like the payloads which are views of the receive buffer, so that WebSocketImpl copies it unless it may borrow it
+			payload = reassemblyview;
+			payload.clear();
+			payload.limit( payloadlength );
+		}
+		return completeFrame( payload, reuse );
+	}
 
-		// int maskskeystart = foff + realpacketsize;
-		realpacketsize += ( MASK ? 4 : 0 );
-		// int payloadstart = foff + realpacketsize;
-		realpacketsize += payloadlength;
-
-		if( maxpacketsize < realpacketsize )
-			throw new IncompleteException( realpacketsize );
+	/** Passes on the part of the payload which is in <var>buffer</var> as a fragment of its own, unmasked in place like a payload which is there as a whole. */
+	private Framedata readPiece( ByteBuffer buffer ) throws InvalidDataException {
+		int count = Math.min( buffer.remaining(), payloadlength - streamed );
+		if( count == 0 )
+			return null;
+		int start = buffer.position();
+		// the mask key continues where the previous piece stopped
+		if( masked )
+			mask( buffer, start, count, Integer.rotateLeft( maskkey, 8 * ( streamed & 3 ) ) );
+		ByteBuffer payload = view( buffer, start, count );
+		buffer.position( start + count );
+		boolean first = streamed == 0;
+		streamed += count;
+		boolean last = streamed == payloadlength;
+		reusableframe.setFin( fin && last );
+		reusableframe.setOptcode( first ? optcode : Opcode.CONTINUOUS );
+		reusableframe.setPayload( payload );
+		if( last ) {
+			state = HEADER;
+			needed = 2;
+			streamed = 0;
+		}
+		return reusableframe;
+	}
 
-		ByteBuffer payload = ByteBuffer.allocate( checkAlloc( payloadlength ) );
-		if( MASK ) {
-			byte[] maskskey = new byte[ 4 ];
-			buffer.get( maskskey );
-			for( int i = 0 ; i < payloadlength ; i++ ) {
-				payload.put( (byte) ( (byte) buffer.get( /*payloadstart + i*/) ^ (byte) maskskey[ i % 4 ] ) );
-			}
-		} else {
-			payload.put( buffer.array(), buffer.position(), payload.limit() );
-			buffer.position( buffer.position() + payload.limit() );
+	/** Returns {@link #view}, set up to show <var>length</var> bytes of <var>buffer</var> from <var>start</var> on. */
+	private ByteBuffer view( ByteBuffer buffer, int start, int length ) {
+		if( viewed != buffer ) {
+			view = buffer.asReadOnlyBuffer();
+			viewed = buffer;
 		}
+		view.clear();
+		view.limit( start + length );
+		view.position( start );
+		return view;
+	}
 
+	private Framedata completeFrame( ByteBuffer payload, boolean reuse ) throws InvalidDataException {
+		state = HEADER;
+		needed = 2;
 		FrameBuilder frame;
 		if( optcode == Opcode.CLOSING ) {
 			frame = new CloseFrameBuilder();
 		} else {
-			frame = new FramedataImpl1();
-			frame.setFin( FIN );
+			frame = reuse ? reusableframe : new FramedataImpl1();
+			frame.setFin( fin );
 			frame.setOptcode( optcode );
 		}
-		payload.flip();
 		frame.setPayload( payload );
 		return frame;
 	}
 
 	@Override
 	public void reset() {
+		state = HEADER;
+		needed = 2;
+		accumulator = 0;
 		incompleteframe = null;
+		streamed = 0;
+		binarymessage = false;
+		view = null;
+		viewed = null;
+		reassembly = null;
+		reassemblyview = null;
 	}
 
 	@Override
@@ -80,6 +80,11 @@ public class Draft_75 extends Draft {
 		return b;
 	}
 
+	@Override
+	public boolean isDiscardableFrame( ByteBuffer frame ) {
+		return frame.hasRemaining() && frame.get( frame.position() ) == START_OF_FRAME;
+	}
+
 	@Override
 	public List<Framedata> createFrames( ByteBuffer binary, boolean mask ) {
 		throw new RuntimeException( "not yet implemented" );
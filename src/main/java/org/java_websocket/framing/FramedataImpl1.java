@@ -102,9 +102,24 @@ public class FramedataImpl1 implements FrameBuilder {
 		fin = nextframe.isFin();
 	}
 
+	/**
+	 * Returns a copy of the remaining bytes of <var>payload</var> if it is read only, which is how received payloads which still belong to the receive buffer are handed out. Otherwise <var>payload</var> itself is returned.<br>
+	 * To keep a frame which is only valid during a callback, copy it with {@link #FramedataImpl1(Framedata)} and give the copy the payload returned by this method.
+	 * 
+	 * @see org.java_websocket.WebSocketImpl#setZeroCopyPayloads(boolean)
+	 */
+	public static ByteBuffer retain( ByteBuffer payload ) {
+		if( payload == null || !payload.isReadOnly() )
+			return payload;
+		ByteBuffer copy = ByteBuffer.allocate( payload.remaining() );
+		copy.put( payload.duplicate() );
+		copy.flip();
+		return copy;
+	}
+
 	@Override
 	public String toString() {
-		return "Framedata{ optcode:" + getOpcode() + ", fin:" + isFin() + ", payloadlength:[pos:" + unmaskedpayload.position() + ", len:" + unmaskedpayload.remaining() + "], payload:" + Arrays.toString( Charsetfunctions.utf8Bytes( new String( unmaskedpayload.array() ) ) ) + "}";
+		return "Framedata{ optcode:" + getOpcode() + ", fin:" + isFin() + ", payloadlength:[pos:" + unmaskedpayload.position() + ", len:" + unmaskedpayload.remaining() + "], payload:" + Arrays.toString( Charsetfunctions.utf8Bytes( Charsetfunctions.stringAscii( (ByteBuffer) unmaskedpayload.duplicate().clear() ) ) ) + "}";
 	}
 
 }
@@ -0,0 +1,131 @@
+package org.java_websocket.server;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+
+/**
+ * The set of connections a {@link WebSocketServer} uses by default.<br>
+ * Adding and removing connections takes constant time and does not need external synchronization. Iterators are weakly consistent: they never throw a {@link java.util.ConcurrentModificationException} and reflect some of the changes made while iterating.<br>
+ * {@link #size()} is maintained in a counter and therefore exact and cheap.<br>
+ * {@link #snapshot()} returns an array of the connections which is only rebuilt after the set changed, so that broadcasting to all connections does not copy the set every time.
+ */
+public class ConnectionRegistry extends AbstractSet<WebSocket> {
+
+	private static final WebSocket[] EMPTY = new WebSocket[ 0 ];
+
+	private final ConcurrentHashMap<WebSocket,Boolean> map;
+	private final AtomicInteger count = new AtomicInteger();
+	/** Incremented after every change of {@link #map} */
+	private final AtomicLong version = new AtomicLong();
+	/** The last array returned by {@link #snapshot()} and the version it has been taken at */
+	private volatile Snapshot snapshot = new Snapshot( 0, EMPTY );
+
+	private static class Snapshot {
+		final long version;
+		final WebSocket[] connections;
+		Snapshot( long version , WebSocket[] connections ) {
+			this.version = version;
+			this.connections = connections;
+		}
+	}
+
+	public ConnectionRegistry() {
+		this( 16, 16 );
+	}
+
+	/**
+	 * @param initialcapacity
+	 *            the number of connections to allocate room for
+	 * @param concurrencylevel
+	 *            the estimated number of threads adding and removing connections at the same time
+	 */
+	public ConnectionRegistry( int initialcapacity , int concurrencylevel ) {
+		map = new ConcurrentHashMap<WebSocket,Boolean>( initialcapacity, 0.75f, concurrencylevel );
+	}
+
+	@Override
+	public boolean add( WebSocket ws ) {
+		if( ws == null )
+			throw new NullPointerException();
+		if( map.putIfAbsent( ws, Boolean.TRUE ) != null )
+			return false;
+		count.incrementAndGet();
+		version.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public boolean remove( Object o ) {
+		if( o == null || map.remove( o ) == null )
+			return false;
+		count.decrementAndGet();
+		version.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public boolean contains( Object o ) {
+		return o != null && map.containsKey( o );
+	}
+
+	@Override
+	public int size() {
+		return count.get();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return count.get() == 0;
+	}
+
+	@Override
+	public Iterator<WebSocket> iterator() {
+		final Iterator<WebSocket> it = map.keySet().iterator();
+		return new Iterator<WebSocket>() {
+			private WebSocket last;
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+			@Override
+			public WebSocket next() {
+				return last = it.next();
+			}
+			@Override
+			public void remove() {
+				if( last == null )
+					throw new IllegalStateException();
+				ConnectionRegistry.this.remove( last );
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Returns the current connections as an array which must not be modified.<br>
+	 * The same array is returned until the set changes. Connections which are added or removed while the array is rebuilt may or may not be contained in it.
+	 */
+	public WebSocket[] snapshot() {
+		// the version is read before the map, so a change during the iteration leaves the snapshot outdated rather than pretending it is current
+		long v = version.get();
+		Snapshot s = snapshot;
+		if( s.version == v )
+			return s.connections;
+		WebSocket[] connections = map.keySet().toArray( EMPTY );
+		snapshot = new Snapshot( v, connections );
+		return connections;
+	}
+
+	/** Returns {@link #snapshot()} as an unmodifiable list. */
+	public List<WebSocket> snapshotList() {
+		return Collections.unmodifiableList( Arrays.asList( snapshot() ) );
+	}
+}
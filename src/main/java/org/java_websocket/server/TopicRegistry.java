@@ -0,0 +1,217 @@
+package org.java_websocket.server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.java_websocket.WebSocket;
+
+/**
+ * Keeps track of which connections of a {@link WebSocketServer} are subscribed to which topics and publishes messages to the subscribers of a topic.<br>
+ * The topics are spread over a number of stripes, each guarded by its own lock, so that subscriptions to different topics rarely contend. The subscribers of a topic are kept in an array which is replaced as a whole on every change. Publishing therefore neither locks nor copies the subscribers and a message reaches exactly the subscribers of the moment it was published.<br>
+ * Publishing goes through {@link WebSocketServer#broadcast(String, java.util.Collection)}, so every message is encoded only once per draft.<br>
+ * The subscriptions of a connection are removed when it closes. Topics without subscribers are removed.
+ *
+ * @see WebSocketServer#getTopics()
+ */
+public class TopicRegistry {
+
+	/** The number of stripes of registries which have been created without specifying one. */
+	public static int DEFAULT_STRIPES = 64;
+
+	private static final WebSocket[] EMPTY = new WebSocket[ 0 ];
+
+	private final WebSocketServer server;
+
+	/** The topics of each stripe. Looked up without locking, but only changed while holding the lock of the corresponding entry of {@link #locks}. */
+	private final ConcurrentMap<String,WebSocket[]>[] stripes;
+	private final Object[] locks;
+	private final int mask;
+
+	/** The topics every connection is subscribed to, which are needed to clean up once it closed */
+	private final ConcurrentMap<WebSocket,Set<String>> subscriptions = new ConcurrentHashMap<WebSocket,Set<String>>();
+
+	public TopicRegistry( WebSocketServer server ) {
+		this( server, DEFAULT_STRIPES );
+	}
+
+	/**
+	 * @param stripes
+	 *            the number of locks the topics are spread over. Rounded up to the next power of two.
+	 */
+	@SuppressWarnings("unchecked")
+	public TopicRegistry( WebSocketServer server , int stripes ) {
+		if( stripes < 1 )
+			throw new IllegalArgumentException( "the number of stripes must be positive" );
+		this.server = server;
+		int n = Integer.highestOneBit( stripes - 1 ) << 1;
+		if( n == 0 )
+			n = 1;
+		this.stripes = (ConcurrentMap<String,WebSocket[]>[]) new ConcurrentMap<?,?>[ n ];
+		this.locks = new Object[ n ];
+		for( int i = 0 ; i < n ; i++ ) {
+			this.stripes[ i ] = new ConcurrentHashMap<String,WebSocket[]>();
+			this.locks[ i ] = new Object();
+		}
+		this.mask = n - 1;
+	}
+
+	private int stripe( String topic ) {
+		int h = topic.hashCode();
+		h ^= ( h >>> 16 );
+		return h & mask;
+	}
+
+	/**
+	 * Subscribes <var>conn</var> to <var>topic</var>.
+	 *
+	 * @return false if <var>conn</var> already was subscribed or is closed
+	 */
+	public boolean subscribe( WebSocket conn, String topic ) {
+		if( conn == null || topic == null )
+			throw new IllegalArgumentException( "connection and topic must not be null" );
+		while ( true ) {
+			Set<String> topics = subscriptions.get( conn );
+			if( topics == null ) {
+				topics = Collections.newSetFromMap( new ConcurrentHashMap<String,Boolean>( 4 ) );
+				Set<String> existing = subscriptions.putIfAbsent( conn, topics );
+				if( existing != null )
+					topics = existing;
+			}
+			int s = stripe( topic );
+			synchronized ( locks[ s ] ) {
+				if( !topics.add( topic ) )
+					return false;
+				WebSocket[] subscribers = stripes[ s ].get( topic );
+				if( subscribers == null ) {
+					subscribers = new WebSocket[]{ conn };
+				} else {
+					subscribers = Arrays.copyOf( subscribers, subscribers.length + 1 );
+					subscribers[ subscribers.length - 1 ] = conn;
+				}
+				stripes[ s ].put( topic, subscribers );
+			}
+			if( conn.isClosing() || conn.isClosed() ) {
+				// the connection may have been cleaned up before it was added to the topic
+				remove( conn, topic, topics );
+				if( topics.isEmpty() )
+					subscriptions.remove( conn, topics );
+				return false;
+			}
+			if( subscriptions.get( conn ) == topics )
+				return true;
+			// the set has been dropped meanwhile because its last topic was unsubscribed
+			remove( conn, topic, topics );
+		}
+	}
+
+	/**
+	 * Unsubscribes <var>conn</var> from <var>topic</var>.
+	 *
+	 * @return false if <var>conn</var> was not subscribed
+	 */
+	public boolean unsubscribe( WebSocket conn, String topic ) {
+		Set<String> topics = subscriptions.get( conn );
+		if( topics == null )
+			return false;
+		boolean removed = remove( conn, topic, topics );
+		if( topics.isEmpty() )
+			subscriptions.remove( conn, topics );
+		return removed;
+	}
+
+	/**
+	 * Removes <var>topic</var> from the <var>topics</var> of <var>conn</var> and <var>conn</var> from the subscribers of <var>topic</var>, and the topic if it has no subscribers left.<br>
+	 * Both happen under the lock of the topic, so that they can not diverge when the topic is subscribed and unsubscribed concurrently.
+	 */
+	private boolean remove( WebSocket conn, String topic, Set<String> topics ) {
+		int s = stripe( topic );
+		synchronized ( locks[ s ] ) {
+			topics.remove( topic );
+			WebSocket[] subscribers = stripes[ s ].get( topic );
+			if( subscribers == null )
+				return false;
+			int i = 0;
+			while ( i < subscribers.length && subscribers[ i ] != conn )
+				i++;
+			if( i == subscribers.length )
+				return false;
+			if( subscribers.length == 1 ) {
+				stripes[ s ].remove( topic );
+			} else {
+				WebSocket[] n = new WebSocket[ subscribers.length - 1 ];
+				System.arraycopy( subscribers, 0, n, 0, i );
+				System.arraycopy( subscribers, i + 1, n, i, n.length - i );
+				stripes[ s ].put( topic, n );
+			}
+			return true;
+		}
+	}
+
+	/** Removes all subscriptions of <var>conn</var>. Called by the server when a connection closed. */
+	public void unsubscribeAll( WebSocket conn ) {
+		Set<String> topics = subscriptions.remove( conn );
+		if( topics == null )
+			return;
+		for( String topic : topics ) {
+			remove( conn, topic, topics );
+		}
+	}
+
+	/**
+	 * Sends <var>text</var> to all subscribers of <var>topic</var>.
+	 *
+	 * @return the number of subscribers the message has been sent to
+	 */
+	public int publish( String topic, String text ) {
+		WebSocket[] subscribers = stripes[ stripe( topic ) ].get( topic );
+		if( subscribers == null )
+			return 0;
+		server.broadcast( text, Arrays.asList( subscribers ) );
+		return subscribers.length;
+	}
+
+	/**
+	 * Sends <var>data</var> to all subscribers of <var>topic</var>. The position of <var>data</var> is not changed.
+	 *
+	 * @return the number of subscribers the message has been sent to
+	 */
+	public int publish( String topic, ByteBuffer data ) {
+		WebSocket[] subscribers = stripes[ stripe( topic ) ].get( topic );
+		if( subscribers == null )
+			return 0;
+		server.broadcast( data, Arrays.asList( subscribers ) );
+		return subscribers.length;
+	}
+
+	/** Returns an unmodifiable snapshot of the subscribers of <var>topic</var>. */
+	public List<WebSocket> getSubscribers( String topic ) {
+		WebSocket[] subscribers = stripes[ stripe( topic ) ].get( topic );
+		return Collections.unmodifiableList( Arrays.asList( subscribers == null ? EMPTY : subscribers ) );
+	}
+
+	/** Returns the number of subscribers of <var>topic</var>. */
+	public int getSubscriberCount( String topic ) {
+		WebSocket[] subscribers = stripes[ stripe( topic ) ].get( topic );
+		return subscribers == null ? 0 : subscribers.length;
+	}
+
+	/** Returns an unmodifiable view of the topics <var>conn</var> is subscribed to. */
+	public Set<String> getSubscriptions( WebSocket conn ) {
+		Set<String> topics = subscriptions.get( conn );
+		return topics == null ? Collections.<String> emptySet() : Collections.unmodifiableSet( topics );
+	}
+
+	/** Returns the number of topics which have at least one subscriber. */
+	public int getTopicCount() {
+		int count = 0;
+		for( ConcurrentMap<String,WebSocket[]> stripe : stripes ) {
+			count += stripe.size();
+		}
+		return count;
+	}
+}
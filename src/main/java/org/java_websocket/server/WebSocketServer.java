@@ -15,20 +15,30 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.RandomAccess;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.SlowConsumerPolicy;
 import org.java_websocket.SocketChannelIOHelper;
 import org.java_websocket.WebSocket;
 import org.java_websocket.WebSocketAdapter;
@@ -37,11 +47,17 @@ import org.java_websocket.WebSocketImpl;
 import org.java_websocket.WrappedByteChannel;
 import org.java_websocket.drafts.Draft;
 import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.handshake.Handshakedata;
 import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.util.DirectBufferPool;
+import org.java_websocket.util.HashedTimingWheel;
+import org.java_websocket.util.LongObjectMap;
+import org.java_websocket.util.MpmcArrayQueue;
+import org.java_websocket.util.SerialExecutor;
 
 /**
  * <tt>WebSocketServer</tt> is an abstract class that only takes care of the
@@ -53,6 +69,9 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 
 	public static int DECODERS = Runtime.getRuntime().availableProcessors();
 
+	/** The maximum number of connections which may wait to be decoded by a single {@link WebSocketWorker}. Connections which find the queues of all workers full wait in an overflow queue instead. */
+	public static int WORKER_QUEUE_CAPACITY = 4096;
+
 	/**
 	 * Holds the list of active WebSocket connections. "Active" means WebSocket
 	 * handshake is complete and socket can be written to, or read from.
@@ -83,12 +102,73 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	private List<WebSocketWorker> decoders;
 
 	private List<WebSocketImpl> iqueue;
-	private BlockingQueue<ByteBuffer> buffers;
-	private int queueinvokes = 0;
-	private AtomicInteger queuesize = new AtomicInteger( 0 );
+
+	/** The number of selector loops; see {@link #setSelectorCount(int)} */
+	private int selectorcount = 1;
+	/** The selector loops the accepted connections are handed to. Null when the selectorthread performs all network IO by itself. */
+	private List<WebSocketSelector> selectors;
+	private int selectorinvokes = 0;
+	/** Whether every selector loop listens on its own SO_REUSEPORT channel; see {@link #setReusePort(boolean)} */
+	private volatile boolean reuseport = false;
+	/** The pool the receive buffers are taken from; see {@link #setBufferPool(DirectBufferPool)} */
+	private DirectBufferPool bufferpool = new DirectBufferPool();
+	/** see {@link #setOverflowBufferLimit(int)} */
+	private volatile int overflowlimit = 0;
+	/** The number of overflow buffers which have not yet been returned */
+	private final AtomicInteger overflowbuffers = new AtomicInteger( 0 );
+	private final AtomicLong overflowallocations = new AtomicLong( 0 );
+	private final AtomicLong starvations = new AtomicLong( 0 );
+	/** Connections which do not read because there was no receive buffer for them. Each returned buffer resumes one of them. */
+	private final Queue<WebSocketImpl> starved = new ConcurrentLinkedQueue<WebSocketImpl>();
+	private AtomicInteger queueinvokes = new AtomicInteger( 0 );
+	/** Connections which were scheduled while the queues of all workers were full. Since a connection is scheduled at most once it holds no more than all connections. */
+	private final Queue<WebSocketImpl> overflow = new ConcurrentLinkedQueue<WebSocketImpl>();
+
+	/** see {@link #setWorkerIdleStrategy(int, int)} */
+	private volatile int workerspins = 0;
+	private volatile int workeryields = 0;
+
+	/** see {@link #setWriteQuantum(int)} */
+	private volatile int writequantum = 64 * 1024;
+
+	/** see {@link #setBroadcastExecutor(Executor, int)} */
+	private volatile Executor broadcastexecutor = null;
+	private volatile int broadcastchunksize = 1024;
+
+	/** see {@link #setApplicationExecutor(Executor, int)} */
+	private Executor applicationexecutor = null;
+	private int maxpendingcallbacks = 0;
+
+	/** see {@link #setIdleTimeouts(long, long, long, TimeUnit)}; in nanoseconds, 0 when disabled */
+	private long readidle = 0;
+	private long writeidle = 0;
+	private long allidle = 0;
+	/** see {@link #setHeartbeat(long, long, TimeUnit)}; in nanoseconds, 0 when disabled */
+	private long heartbeatinterval = 0;
+	private long pongtimeout = 0;
+	private final Random jitter = new Random();
+	/** The timers of the connections the selectorthread performs the IO of; null if there are no timeouts to track */
+	private HashedTimingWheel<WebSocketImpl> timers;
+	private final List<WebSocketImpl> expired = new ArrayList<WebSocketImpl>();
+
+	/** see {@link #setSlowConsumerPolicy(SlowConsumerPolicy, long)} */
+	private volatile SlowConsumerPolicy slowconsumerpolicy = null;
+	private volatile long maxbufferedamount = Long.MAX_VALUE;
+	/** see {@link #setZeroCopyPayloads(boolean)} */
+	private volatile boolean zerocopy = false;
+	/** see {@link #setStreamingMessages(boolean)} */
+	private volatile boolean streaming = false;
 
 	private WebSocketServerFactory wsf = new DefaultWebSocketServerFactory();
 
+	/** The id of the last accepted connection; see {@link WebSocketImpl#getId()} */
+	private final AtomicLong lastid = new AtomicLong( 0 );
+	/** The open connections by their id; see {@link #getConnection(long)} */
+	private final LongObjectMap<WebSocket> connectionsbyid = new LongObjectMap<WebSocket>();
+
+	/** see {@link #getTopics()} */
+	private final TopicRegistry topics = new TopicRegistry( this );
+
 	/**
 	 * Creates a WebSocketServer that will attempt to
 	 * listen on port <var>WebSocket.DEFAULT_PORT</var>.
@@ -126,7 +206,7 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	 * @see #WebSocketServer(InetSocketAddress, int, List, Collection) more details here
 	 */
 	public WebSocketServer( InetSocketAddress address , int decodercount , List<Draft> drafts ) {
-		this( address, decodercount, drafts, new HashSet<WebSocket>() );
+		this( address, decodercount, drafts, new ConnectionRegistry() );
 	}
 
 	/**
@@ -144,7 +224,7 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	 * @param connectionscontainer
 	 *            Allows to specify a collection that will be used to store the websockets in. <br>
 	 *            If you plan to often iterate through the currently connected websockets you may want to use a collection that does not require synchronization like a {@link CopyOnWriteArraySet}. In that case make sure that you overload {@link #removeConnection(WebSocket)} and {@link #addConnection(WebSocket)}.<br>
-	 *            By default a {@link HashSet} will be used.
+	 *            By default a {@link ConnectionRegistry} will be used, which needs no synchronization at all. Other collections are synchronized on.
 	 * 
 	 * @see #removeConnection(WebSocket) for more control over syncronized operation
 	 * @see <a href="https://github.com/TooTallNate/Java-WebSocket/wiki/Drafts" > more about drafts
@@ -165,7 +245,6 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		iqueue = new LinkedList<WebSocketImpl>();
 
 		decoders = new ArrayList<WebSocketWorker>( decodercount );
-		buffers = new LinkedBlockingQueue<ByteBuffer>();
 		for( int i = 0 ; i < decodercount ; i++ ) {
 			WebSocketWorker ex = new WebSocketWorker();
 			decoders.add( ex );
@@ -210,9 +289,7 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		List<WebSocket> socketsToClose = null;
 
 		// copy the connections in a list (prevent callback deadlocks)
-		synchronized ( connections ) {
-			socketsToClose = new ArrayList<WebSocket>( connections );
-		}
+		socketsToClose = snapshot();
 
 		for( WebSocket ws : socketsToClose ) {
 			ws.close( CloseFrame.GOING_AWAY );
@@ -237,9 +314,9 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	}
 
 	/**
-	 * Returns a WebSocket[] of currently connected clients.
-	 * Its iterators will be failfast and its not judicious
-	 * to modify it.
+	 * Returns the collection of currently connected clients.
+	 * It is not judicious to modify it.<br>
+	 * With the default {@link ConnectionRegistry} it may be iterated without locking. Collections passed to {@link #WebSocketServer(InetSocketAddress, int, List, Collection)} have to be synchronized on while iterating them.
 	 * 
 	 * @return The currently connected clients.
 	 */
@@ -247,6 +324,229 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		return this.connections;
 	}
 
+	/**
+	 * Returns the open connection with the given {@link WebSocketImpl#getId() id} or null if there is none.<br>
+	 * The lookup neither locks nor allocates.
+	 */
+	public WebSocket getConnection( long id ) {
+		return connectionsbyid.get( id );
+	}
+
+	/**
+	 * Calls <var>visitor</var> with every open connection and its id, without locking and without boxing the ids.<br>
+	 * Connections which open or close meanwhile may or may not be visited.
+	 */
+	public void forEachConnection( LongObjectMap.Visitor<? super WebSocket> visitor ) {
+		connectionsbyid.forEach( visitor );
+	}
+
+	/**
+	 * Returns the registry of the topics the connections of this server are subscribed to.<br>
+	 * Connections are unsubscribed from all their topics once they closed.
+	 */
+	public TopicRegistry getTopics() {
+		return topics;
+	}
+
+	/** Sends <var>text</var> to all open connections; see {@link #broadcast(String, Collection)}. */
+	public void broadcast( String text ) {
+		broadcast( text, snapshot() );
+	}
+
+	/** Sends <var>data</var> to all open connections; see {@link #broadcast(ByteBuffer, Collection)}. */
+	public void broadcast( ByteBuffer data ) {
+		broadcast( data, snapshot() );
+	}
+
+	/**
+	 * Sends <var>text</var> to every open connection in <var>recipients</var>.<br>
+	 * Unlike calling {@link WebSocket#send(String)} for every recipient, the message is encoded and framed only once per draft in use. Each recipient gets a read-only duplicate of the shared frame, so that the cost per recipient does not depend on the size of the message.<br>
+	 * Connections which are not open are skipped. The caller has to synchronize on the collection if other threads may modify it meanwhile.
+	 */
+	public void broadcast( String text, Collection<WebSocket> recipients ) {
+		if( text == null )
+			throw new IllegalArgumentException( "Cannot send 'null' data to a WebSocketImpl." );
+		broadcast( text, null, recipients );
+	}
+
+	/**
+	 * Sends the remaining bytes of <var>data</var> as one binary message to every open connection in <var>recipients</var>; see {@link #broadcast(String, Collection)}.<br>
+	 * The position of <var>data</var> is not changed.
+	 */
+	public void broadcast( ByteBuffer data, Collection<WebSocket> recipients ) {
+		if( data == null )
+			throw new IllegalArgumentException( "Cannot send 'null' data to a WebSocketImpl." );
+		broadcast( null, data, recipients );
+	}
+
+	private void broadcast( String text, ByteBuffer data, Collection<WebSocket> recipients ) {
+		List<WebSocket> list = recipients instanceof List && recipients instanceof RandomAccess ? (List<WebSocket>) recipients : new ArrayList<WebSocket>( recipients );
+		Broadcast message = new Broadcast( text, data );
+		int size = list.size();
+		int chunksize = broadcastchunksize;
+		Executor executor = broadcastexecutor;
+		if( executor == null || size <= chunksize ) {
+			for( int from = 0 ; from < size ; from += chunksize ) {
+				fanout( message, list, from, Math.min( size, from + chunksize ) );
+			}
+			return;
+		}
+		// the calling thread takes the first chunk and waits for the others, so that consecutive broadcasts stay in order
+		int chunks = ( size + chunksize - 1 ) / chunksize;
+		CountDownLatch done = new CountDownLatch( chunks - 1 );
+		for( int i = 1 ; i < chunks ; i++ ) {
+			Runnable chunk = new FanoutChunk( message, list, i * chunksize, Math.min( size, ( i + 1 ) * chunksize ), done );
+			try {
+				executor.execute( chunk );
+			} catch ( RejectedExecutionException e ) {
+				chunk.run();
+			}
+		}
+		fanout( message, list, 0, chunksize );
+		boolean interrupted = false;
+		while ( true ) {
+			try {
+				done.await();
+				break;
+			} catch ( InterruptedException e ) {
+				interrupted = true;
+			}
+		}
+		if( interrupted )
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Queues the message for the recipients <var>from</var> to <var>to</var>.<br>
+	 * The write interest of every connection is updated once after its frames have been queued and every selector involved is woken up only once for the whole chunk.
+	 */
+	private void fanout( Broadcast message, List<WebSocket> recipients, int from, int to ) {
+		Selector[] wake = new Selector[ selectors == null ? 1 : selectors.size() ];
+		int wakecount = 0;
+		for( int i = from ; i < to ; i++ ) {
+			WebSocket ws = recipients.get( i );
+			if( !ws.isOpen() )
+				continue;
+			Draft draft = ws.getDraft();
+			try {
+				if( !( ws instanceof WebSocketImpl ) || draft == null || draft.getRole() != WebSocket.Role.SERVER ) {
+					// frames of clients are masked individually
+					if( message.text != null )
+						ws.send( message.text );
+					else
+						ws.send( message.data.duplicate() );
+					continue;
+				}
+				WebSocketImpl conn = (WebSocketImpl) ws;
+				List<ByteBuffer> frames = message.frames( draft );
+				for( int f = 0 ; f < frames.size() ; f++ ) {
+					conn.enqueueEncodedFrame( frames.get( f ).asReadOnlyBuffer() );
+				}
+				SelectionKey key = conn.key;
+				if( key == null ) {
+					onWriteDemand( conn );
+					continue;
+				}
+				try {
+					updateInterestOps( conn );
+				} catch ( CancelledKeyException e ) {
+					// the thread which cancels key is responsible for possible cleanup
+					conn.clearQueued();
+					continue;
+				}
+				Selector sel = key.selector();
+				int w = 0;
+				while ( w < wakecount && wake[ w ] != sel )
+					w++;
+				if( w == wakecount ) {
+					if( wakecount == wake.length )
+						wake = Arrays.copyOf( wake, wakecount * 2 );
+					wake[ wakecount++ ] = sel;
+				}
+			} catch ( WebsocketNotConnectedException e ) {
+				// closed meanwhile
+			}
+		}
+		for( int w = 0 ; w < wakecount ; w++ ) {
+			wake[ w ].wakeup();
+		}
+	}
+
+	/** A message which is being broadcast together with the frames it has been encoded to so far, one list per draft class. */
+	private static class Broadcast {
+		final String text;
+		final ByteBuffer data;
+		/** Replaced as a whole whenever a draft is added, so that the chunks can look up the frames without locking */
+		private volatile Object[] encoded = new Object[ 0 ];
+
+		Broadcast( String text , ByteBuffer data ) {
+			this.text = text;
+			this.data = data;
+		}
+
+		@SuppressWarnings("unchecked")
+		List<ByteBuffer> frames( Draft draft ) {
+			Object[] e = encoded;
+			for( int i = 0 ; i < e.length ; i += 2 ) {
+				if( e[ i ] == draft.getClass() )
+					return (List<ByteBuffer>) e[ i + 1 ];
+			}
+			synchronized ( this ) {
+				e = encoded;
+				for( int i = 0 ; i < e.length ; i += 2 ) {
+					if( e[ i ] == draft.getClass() )
+						return (List<ByteBuffer>) e[ i + 1 ];
+				}
+				List<Framedata> framedata = text != null ? draft.createFrames( text, false ) : draft.createFrames( data.duplicate(), false );
+				List<ByteBuffer> frames = new ArrayList<ByteBuffer>( framedata.size() );
+				for( Framedata f : framedata ) {
+					frames.add( draft.createBinaryFrame( f ) );
+				}
+				Object[] n = Arrays.copyOf( e, e.length + 2 );
+				n[ e.length ] = draft.getClass();
+				n[ e.length + 1 ] = frames;
+				encoded = n;
+				return frames;
+			}
+		}
+	}
+
+	private class FanoutChunk implements Runnable {
+		private final Broadcast message;
+		private final List<WebSocket> recipients;
+		private final int from;
+		private final int to;
+		private final CountDownLatch done;
+
+		FanoutChunk( Broadcast message , List<WebSocket> recipients , int from , int to , CountDownLatch done ) {
+			this.message = message;
+			this.recipients = recipients;
+			this.from = from;
+			this.to = to;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			try {
+				fanout( message, recipients, from, to );
+			} catch ( RuntimeException e ) {
+				onError( null, e );
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+
+	/** Returns a copy of the current connections which is safe to iterate without holding a lock. */
+	private List<WebSocket> snapshot() {
+		if( connections instanceof ConnectionRegistry )
+			return Arrays.asList( ( (ConnectionRegistry) connections ).snapshot() );
+		synchronized ( connections ) {
+			return new ArrayList<WebSocket>( connections );
+		}
+	}
+
 	public InetSocketAddress getAddress() {
 		return this.address;
 	}
@@ -268,6 +568,288 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		return Collections.unmodifiableList( drafts );
 	}
 
+	/**
+	 * Sets the number of selector loops the network IO of the accepted connections is spread across.<br>
+	 * With the default of 1 the selectorthread accepts connections and performs all reads and writes by itself.<br>
+	 * With a higher count the selectorthread only accepts connections and hands each of them over to one of <var>selectorcount</var> {@link WebSocketSelector}s, each with its own {@link Selector}.<br>
+	 * Must be called before the server is started.
+	 * 
+	 * @throws IllegalStateException
+	 *             when the server has already been started
+	 */
+	public void setSelectorCount( int selectorcount ) {
+		if( selectorcount < 1 )
+			throw new IllegalArgumentException( "at least 1 selector is required" );
+		synchronized ( this ) {
+			if( selectorthread != null )
+				throw new IllegalStateException( "the selector count can not be changed after the server has been started" );
+			this.selectorcount = selectorcount;
+		}
+	}
+
+	public int getSelectorCount() {
+		return selectorcount;
+	}
+
+	/**
+	 * Sets the pool the selector threads take their receive buffers from and the workers return them to after decoding.<br>
+	 * By default every server has its own {@link DirectBufferPool} with {@link DirectBufferPool#DEFAULT_CAPACITY}. Servers may share a pool to bound the memory of all of them together.<br>
+	 * Must be called before the server is started.
+	 * 
+	 * @throws IllegalStateException
+	 *             when the server has already been started
+	 */
+	public void setBufferPool( DirectBufferPool bufferpool ) {
+		if( bufferpool == null )
+			throw new IllegalArgumentException();
+		synchronized ( this ) {
+			if( selectorthread != null )
+				throw new IllegalStateException( "the buffer pool can not be changed after the server has been started" );
+			this.bufferpool = bufferpool;
+		}
+	}
+
+	public DirectBufferPool getBufferPool() {
+		return bufferpool;
+	}
+
+	/**
+	 * Defines what the selector threads do when the {@link #getBufferPool() buffer pool} is exhausted. They never wait for a buffer to be returned:<br>
+	 * As long as fewer than <var>limit</var> overflow buffers are in use, a temporary heap buffer outside of the pool is allocated for the read.<br>
+	 * Otherwise the connection stops reading (its OP_READ interest is dropped) until the next receive buffer is returned. That way TCP flow control pushes back on the client while the selector keeps serving all other connections.<br>
+	 * The default limit is 0 which means that the pool capacity is a hard limit.
+	 * 
+	 * @see #getOverflowAllocationCount()
+	 * @see #getStarvationCount()
+	 */
+	public void setOverflowBufferLimit( int limit ) {
+		if( limit < 0 )
+			throw new IllegalArgumentException( "the limit must not be negative" );
+		this.overflowlimit = limit;
+	}
+
+	public int getOverflowBufferLimit() {
+		return overflowlimit;
+	}
+
+	/** Returns how often an overflow buffer had to be allocated because the buffer pool was exhausted. */
+	public long getOverflowAllocationCount() {
+		return overflowallocations.get();
+	}
+
+	/** Returns how often a connection stopped reading because the buffer pool was exhausted and no overflow buffer could be allocated. */
+	public long getStarvationCount() {
+		return starvations.get();
+	}
+
+	/**
+	 * When enabled every {@link WebSocketSelector} binds its own {@link ServerSocketChannel} to the server address using the SO_REUSEPORT socket option and accepts its connections by itself.<br>
+	 * The kernel then balances incoming connections across the loops instead of having the selectorthread accept all of them one at a time.<br>
+	 * This only has an effect when the {@link #setSelectorCount(int) selector count} is greater than 1.<br>
+	 * If the platform does not support SO_REUSEPORT the server falls back to a single listening channel. Use {@link #isReusePort()} after the server has been started to find out which mode is in effect.<br>
+	 * Must be called before the server is started.
+	 * 
+	 * @throws IllegalStateException
+	 *             when the server has already been started
+	 */
+	public void setReusePort( boolean reuseport ) {
+		synchronized ( this ) {
+			if( selectorthread != null )
+				throw new IllegalStateException( "the listening mode can not be changed after the server has been started" );
+			this.reuseport = reuseport;
+		}
+	}
+
+	public boolean isReusePort() {
+		return reuseport;
+	}
+
+	/**
+	 * Determines what an idle {@link WebSocketWorker} does before it parks until the next buffer arrives.<br>
+	 * The worker first busy spins <var>spins</var> times, then yields its timeslice <var>yields</var> times and finally parks.<br>
+	 * Spinning avoids the cost of unparking the worker and improves the latency when data arrives at a steady rate, but it burns the cpu time the selector threads may need. The default is to park right away.
+	 */
+	public void setWorkerIdleStrategy( int spins, int yields ) {
+		if( spins < 0 || yields < 0 )
+			throw new IllegalArgumentException( "spins and yields must not be negative" );
+		this.workerspins = spins;
+		this.workeryields = yields;
+	}
+
+	/**
+	 * Limits the number of bytes a selector loop writes to a single connection before it moves on to the other ready connections.<br>
+	 * A connection which still has data queued when its quantum is used up keeps its interest in OP_WRITE and continues in the next pass of the loop. That way a connection with megabytes queued does not hold back the small updates of all other connections which share its selector.<br>
+	 * Smaller quantums lower the latency of the other connections at the cost of more selector passes for bulk transfers. The default is 64 KiB.
+	 */
+	public void setWriteQuantum( int bytes ) {
+		if( bytes < 1 )
+			throw new IllegalArgumentException( "the write quantum must be positive" );
+		this.writequantum = bytes;
+	}
+
+	public int getWriteQuantum() {
+		return writequantum;
+	}
+
+	/**
+	 * Lets {@link #broadcast(String, Collection)} split recipient sets which are larger than <var>chunksize</var> into chunks of that size and queue the message for the chunks in parallel on <var>executor</var>.<br>
+	 * The calling thread takes the first chunk itself and returns once all chunks are done, so consecutive broadcasts arrive in order. Chunks the executor rejects are run by the calling thread as well.<br>
+	 * Without an executor, which is the default, all chunks are processed by the calling thread. Either way every selector is woken up only once per chunk rather than once per recipient.
+	 */
+	public void setBroadcastExecutor( Executor executor, int chunksize ) {
+		if( chunksize < 1 )
+			throw new IllegalArgumentException( "the chunk size must be positive" );
+		this.broadcastchunksize = chunksize;
+		this.broadcastexecutor = executor;
+	}
+
+	public Executor getBroadcastExecutor() {
+		return broadcastexecutor;
+	}
+
+	/**
+	 * Runs the callbacks of the connections, like {@link #onMessage(WebSocket, String)}, on <var>executor</var> instead of the {@link WebSocketWorker}s. null disables this, which is the default.<br>
+	 * The workers still parse the frames and validate text messages, but a slow handler, e.g. one which waits for a database, no longer holds up the other connections of its worker. Every connection has a {@link SerialExecutor} as its mailbox, so its callbacks are run one at a time and in the order they would have been called by the worker, while the callbacks of different connections run in parallel on the threads of <var>executor</var>.<br>
+	 * Once <var>maxpending</var> callbacks of a connection are waiting, its worker stops decoding it until half of them have been run. Its inQueue then fills up and the server stops reading from it, so a client can not flood the executor faster than the handlers keep up. The limit is checked between receive buffers, so it can be exceeded by the messages of a single buffer.<br>
+	 * Must be called before the server is started.
+	 * 
+	 * @param executor
+	 *            the executor to run the callbacks on or null to run them on the workers
+	 * @throws IllegalStateException
+	 *             when the server has already been started
+	 */
+	public void setApplicationExecutor( Executor executor, int maxpending ) {
+		if( executor != null && maxpending < 1 )
+			throw new IllegalArgumentException( "the number of pending callbacks must be positive" );
+		synchronized ( this ) {
+			if( selectorthread != null )
+				throw new IllegalStateException( "the application executor can not be changed after the server has been started" );
+			this.applicationexecutor = executor;
+			this.maxpendingcallbacks = maxpending;
+		}
+	}
+
+	public Executor getApplicationExecutor() {
+		return applicationexecutor;
+	}
+
+	/**
+	 * Runs the callbacks of the connections on virtual threads, so that handlers may block, e.g. on a database or an http call, without occupying a platform thread. Requires Java 21.<br>
+	 * This is {@link #setApplicationExecutor(Executor, int)} with an executor which starts a virtual thread per task. Since the mailbox of a connection runs a batch of its callbacks per task, every connection has at most one virtual thread at a time and its callbacks keep their order.<br>
+	 * Must be called before the server is started.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             when the running JVM does not support virtual threads
+	 * @throws IllegalStateException
+	 *             when the server has already been started
+	 * @see #isVirtualThreadSupported()
+	 */
+	public void setVirtualThreadCallbacks( int maxpending ) {
+		Executor executor = newVirtualThreadExecutor();
+		if( executor == null )
+			throw new UnsupportedOperationException( "virtual threads require java 21" );
+		setApplicationExecutor( executor, maxpending );
+	}
+
+	/** Returns whether the running JVM supports {@link #setVirtualThreadCallbacks(int)}. */
+	public static boolean isVirtualThreadSupported() {
+		return newVirtualThreadExecutor() != null;
+	}
+
+	/**
+	 * Calls <code>Executors.newVirtualThreadPerTaskExecutor()</code> via reflection because it does not exist on all supported java versions.
+	 * 
+	 * @return null if virtual threads are not supported
+	 */
+	private static Executor newVirtualThreadExecutor() {
+		try {
+			return (Executor) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+		} catch ( Exception e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * Closes connections on which nothing has been read for <var>readidle</var>, nothing has been written for <var>writeidle</var> or neither has happened for <var>allidle</var>. A value of 0 disables the respective timeout, which is the default.<br>
+	 * The timeouts are tracked by a {@link HashedTimingWheel} in every selector loop, so reads and writes only record their time and no timer thread is involved. Depending on the shortest timeout the loops check them every 10 milliseconds to every second, which is about how late a timeout may fire.<br>
+	 * Expired connections are closed with {@link CloseFrame#GOING_AWAY}. Connections which still have not closed when the timeout expires again, e.g. because the peer is gone and the close frame can not be written, are closed without completing the close handshake.<br>
+	 * Must be called before the server is started.
+	 * 
+	 * @throws IllegalStateException
+	 *             when the server has already been started
+	 */
+	public void setIdleTimeouts( long readidle, long writeidle, long allidle, TimeUnit unit ) {
+		if( readidle < 0 || writeidle < 0 || allidle < 0 )
+			throw new IllegalArgumentException( "timeouts must not be negative" );
+		synchronized ( this ) {
+			if( selectorthread != null )
+				throw new IllegalStateException( "the idle timeouts can not be changed after the server has been started" );
+			this.readidle = unit.toNanos( readidle );
+			this.writeidle = unit.toNanos( writeidle );
+			this.allidle = unit.toNanos( allidle );
+		}
+	}
+
+	/**
+	 * Makes the server ping every connection every <var>interval</var> and close connections which have not answered a ping within <var>timeout</var>. 0 disables the heartbeat, which is the default.<br>
+	 * Every ping carries a timestamp, so that the pong yields the {@link WebSocket#getLastRoundTripTime(TimeUnit) round-trip time} of the connection. The first ping of a connection is sent after a random part of the interval and the later ones at intervals which randomly vary by 10%, so that the pings of all connections are spread over time instead of being sent in bursts.<br>
+	 * The pings are scheduled on the same timing wheels as the {@link #setIdleTimeouts(long, long, long, TimeUnit) idle timeouts}. Connections which do not answer are closed like idle ones.<br>
+	 * Must be called before the server is started.
+	 * 
+	 * @throws IllegalStateException
+	 *             when the server has already been started
+	 */
+	public void setHeartbeat( long interval, long timeout, TimeUnit unit ) {
+		if( interval < 0 || timeout < 0 || ( interval > 0 && timeout == 0 ) )
+			throw new IllegalArgumentException( "the interval must not be negative and a heartbeat needs a positive timeout" );
+		synchronized ( this ) {
+			if( selectorthread != null )
+				throw new IllegalStateException( "the heartbeat can not be changed after the server has been started" );
+			this.heartbeatinterval = unit.toNanos( interval );
+			this.pongtimeout = unit.toNanos( timeout );
+		}
+	}
+
+	/**
+	 * Applies {@link WebSocketImpl#setSlowConsumerPolicy(SlowConsumerPolicy, long)} to every connection accepted from now on.<br>
+	 * This bounds the memory a client which does not read can hold on the server, e.g. <code>setSlowConsumerPolicy( SlowConsumerPolicy.close( CloseFrame.POLICY_VALIDATION ), 4 * 1024 * 1024 )</code>.<br>
+	 * The policy of a single connection can still be changed in {@link #onOpen(WebSocket, ClientHandshake)}. A null policy lifts the limit.
+	 */
+	public void setSlowConsumerPolicy( SlowConsumerPolicy policy, long maxbufferedamount ) {
+		if( maxbufferedamount < 0 )
+			throw new IllegalArgumentException( "the limit must not be negative" );
+		this.maxbufferedamount = maxbufferedamount;
+		this.slowconsumerpolicy = policy;
+	}
+
+	public SlowConsumerPolicy getSlowConsumerPolicy() {
+		return slowconsumerpolicy;
+	}
+
+	/**
+	 * Applies {@link WebSocketImpl#setZeroCopyPayloads(boolean)} to every connection accepted from now on.<br>
+	 * {@link #onMessage(WebSocket, ByteBuffer)} then receives a read only view of the receive buffer which is only valid until it returns. Handlers which keep the message have to copy it with {@link org.java_websocket.framing.FramedataImpl1#retain(ByteBuffer)}.
+	 */
+	public void setZeroCopyPayloads( boolean zerocopy ) {
+		this.zerocopy = zerocopy;
+	}
+
+	public boolean isZeroCopyPayloads() {
+		return zerocopy;
+	}
+
+	/**
+	 * Applies {@link WebSocketImpl#setStreamingMessages(boolean)} to every connection accepted from now on.<br>
+	 * Binary messages are then delivered to {@link #onMessageChunk(WebSocket, ByteBuffer, boolean)} as they arrive instead of to {@link #onMessage(WebSocket, ByteBuffer)}, so a connection does not need memory for a message as a whole.
+	 */
+	public void setStreamingMessages( boolean streaming ) {
+		this.streaming = streaming;
+	}
+
+	public boolean isStreamingMessages() {
+		return streaming;
+	}
+
 	// Runnable IMPLEMENTATION /////////////////////////////////////////////////
 	public void run() {
 		synchronized ( this ) {
@@ -280,13 +862,29 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		}
 		selectorthread.setName( "WebsocketSelector" + selectorthread.getId() );
 		try {
-			server = ServerSocketChannel.open();
-			server.configureBlocking( false );
-			ServerSocket socket = server.socket();
-			socket.setReceiveBufferSize( WebSocketImpl.RCVBUF );
-			socket.bind( address );
 			selector = Selector.open();
-			server.register( selector, server.validOps() );
+			if( selectorcount == 1 )
+				timers = createTimers();
+			if( selectorcount > 1 ) {
+				selectors = new ArrayList<WebSocketSelector>( selectorcount );
+				for( int i = 0 ; i < selectorcount ; i++ ) {
+					selectors.add( new WebSocketSelector() );
+				}
+			}
+			if( reuseport && selectors != null ) {
+				reuseport = bindReusePort();
+			} else {
+				reuseport = false;
+			}
+			if( !reuseport ) {
+				server = openListener( address, false );
+				server.register( selector, server.validOps() );
+			}
+			if( selectors != null ) {
+				for( WebSocketSelector s : selectors ) {
+					s.start();
+				}
+			}
 		} catch ( IOException ex ) {
 			handleFatal( null, ex );
 			return;
@@ -296,12 +894,13 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 				SelectionKey key = null;
 				WebSocketImpl conn = null;
 				try {
-					selector.select();
+					selector.select( timers == null ? 0 : timers.getTick( TimeUnit.MILLISECONDS ) );
 					Set<SelectionKey> keys = selector.selectedKeys();
 					Iterator<SelectionKey> i = keys.iterator();
 
 					while ( i.hasNext() ) {
 						key = i.next();
+						conn = null;
 
 						if( !key.isValid() ) {
 							// Object o = key.attachment();
@@ -313,68 +912,24 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 								key.cancel();
 								continue;
 							}
-
-							SocketChannel channel = server.accept();
-							channel.configureBlocking( false );
-							WebSocketImpl w = wsf.createWebSocket( this, drafts, channel.socket() );
-							w.key = channel.register( selector, SelectionKey.OP_READ, w );
-							w.channel = wsf.wrapChannel( channel, w.key );
 							i.remove();
-							allocateBuffers( w );
+							doAccept( (ServerSocketChannel) key.channel(), selectors == null ? selector : null );
 							continue;
 						}
 
 						if( key.isReadable() ) {
 							conn = (WebSocketImpl) key.attachment();
-							ByteBuffer buf = takeBuffer();
-							try {
-								if( SocketChannelIOHelper.read( buf, conn, conn.channel ) ) {
-									if( buf.hasRemaining() ) {
-										conn.inQueue.put( buf );
-										queue( conn );
-										i.remove();
-										if( conn.channel instanceof WrappedByteChannel ) {
-											if( ( (WrappedByteChannel) conn.channel ).isNeedRead() ) {
-												iqueue.add( conn );
-											}
-										}
-									} else
-										pushBuffer( buf );
-								} else {
-									pushBuffer( buf );
-								}
-							} catch ( IOException e ) {
-								pushBuffer( buf );
-								throw e;
-							}
+							doRead( key, conn, i, iqueue );
 						}
 						if( key.isWritable() ) {
 							conn = (WebSocketImpl) key.attachment();
-							if( SocketChannelIOHelper.batch( conn, conn.channel ) ) {
-								if( key.isValid() )
-									key.interestOps( SelectionKey.OP_READ );
-							}
+							doWrite( key, conn );
 						}
 					}
-					while ( !iqueue.isEmpty() ) {
-						conn = iqueue.remove( 0 );
-						WrappedByteChannel c = ( (WrappedByteChannel) conn.channel );
-						ByteBuffer buf = takeBuffer();
-						try {
-							if( SocketChannelIOHelper.readMore( buf, conn, c ) )
-								iqueue.add( conn );
-							if( buf.hasRemaining() ) {
-								conn.inQueue.put( buf );
-								queue( conn );
-							} else {
-								pushBuffer( buf );
-							}
-						} catch ( IOException e ) {
-							pushBuffer( buf );
-							throw e;
-						}
-
-					}
+					conn = null;
+					doAdditionalRead( iqueue );
+					if( timers != null )
+						expireTimers( timers, expired );
 				} catch ( CancelledKeyException e ) {
 					// an other thread may cancel the key
 				} catch ( ClosedByInterruptException e ) {
@@ -397,6 +952,11 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 					w.interrupt();
 				}
 			}
+			if( selectors != null ) {
+				for( WebSocketSelector s : selectors ) {
+					s.interrupt();
+				}
+			}
 			if( server != null ) {
 				try {
 					server.close();
@@ -406,39 +966,413 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 			}
 		}
 	}
-	protected void allocateBuffers( WebSocket c ) throws InterruptedException {
-		if( queuesize.get() >= 2 * decoders.size() + 1 ) {
+
+	private ServerSocketChannel openListener( InetSocketAddress bindaddress, boolean reuse ) throws IOException {
+		ServerSocketChannel listener = ServerSocketChannel.open();
+		try {
+			listener.configureBlocking( false );
+			if( reuse && !enableReusePort( listener ) ) {
+				throw new IOException( "SO_REUSEPORT is not supported" );
+			}
+			ServerSocket socket = listener.socket();
+			socket.setReceiveBufferSize( WebSocketImpl.RCVBUF );
+			socket.bind( bindaddress );
+		} catch ( IOException e ) {
+			listener.close();
+			throw e;
+		}
+		return listener;
+	}
+
+	/**
+	 * Opens one SO_REUSEPORT listener per {@link WebSocketSelector}.
+	 * 
+	 * @return false if not all listeners could be bound in which case none of them remains open
+	 */
+	private boolean bindReusePort() {
+		List<ServerSocketChannel> listeners = new ArrayList<ServerSocketChannel>( selectors.size() );
+		try {
+			InetSocketAddress bindaddress = address;
+			for( int i = 0 ; i < selectors.size() ; i++ ) {
+				ServerSocketChannel listener = openListener( bindaddress, true );
+				listeners.add( listener );
+				if( bindaddress.getPort() == 0 ) // the other listeners must share the port the system picked for the first one
+					bindaddress = new InetSocketAddress( address.getAddress(), listener.socket().getLocalPort() );
+			}
+			for( int i = 0 ; i < selectors.size() ; i++ ) {
+				selectors.get( i ).listen( listeners.get( i ) );
+			}
+		} catch ( IOException e ) {
+			if( WebSocketImpl.DEBUG )
+				System.out.println( "falling back to a single listener: " + e );
+			for( ServerSocketChannel listener : listeners ) {
+				try {
+					listener.close();
+				} catch ( IOException e1 ) {
+					// there is nothing that must be done here
+				}
+			}
+			return false;
+		}
+		server = listeners.get( 0 );
+		return true;
+	}
+
+	/**
+	 * Sets SO_REUSEPORT via reflection because neither <code>NetworkChannel.setOption</code> nor the option itself exist on all supported java versions.
+	 * 
+	 * @return whether the option could be set
+	 */
+	private static boolean enableReusePort( ServerSocketChannel listener ) {
+		try {
+			Object option = Class.forName( "java.net.StandardSocketOptions" ).getField( "SO_REUSEPORT" ).get( null );
+			Class<?> networkchannel = Class.forName( "java.nio.channels.NetworkChannel" );
+			Object supported = networkchannel.getMethod( "supportedOptions" ).invoke( listener );
+			if( !( (Set<?>) supported ).contains( option ) )
+				return false;
+			networkchannel.getMethod( "setOption", Class.forName( "java.net.SocketOption" ), Object.class ).invoke( listener, option, Boolean.TRUE );
+			return true;
+		} catch ( Exception e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * Accepts a pending connection from <var>listener</var> and registers it with <var>sel</var> or, if <var>sel</var> is null, hands it over to one of the {@link WebSocketSelector}s.
+	 */
+	private void doAccept( ServerSocketChannel listener, Selector sel ) throws IOException , InterruptedException {
+		SocketChannel channel = listener.accept();
+		if( channel == null ) {
+			return; // the connection has already been accepted by someone else or was reset
+		}
+		channel.configureBlocking( false );
+		WebSocketImpl w = wsf.createWebSocket( this, drafts, channel.socket() );
+		w.setId( lastid.incrementAndGet() );
+		if( applicationexecutor != null )
+			w.mailbox = new Mailbox( w );
+		SlowConsumerPolicy policy = slowconsumerpolicy;
+		if( policy != null )
+			w.setSlowConsumerPolicy( policy, maxbufferedamount );
+		w.setZeroCopyPayloads( zerocopy );
+		w.setStreamingMessages( streaming );
+		if( sel != null ) {
+			register( w, channel, sel );
+		} else {
+			selectors.get( selectorinvokes++ % selectors.size() ).put( w, channel );
+		}
+	}
+
+	private void register( WebSocketImpl w, SocketChannel channel, Selector sel ) throws IOException , InterruptedException {
+		w.key = channel.register( sel, SelectionKey.OP_READ, w );
+		w.channel = wsf.wrapChannel( channel, w.key );
+		HashedTimingWheel<WebSocketImpl> t = timersOf( sel );
+		if( t != null ) {
+			long now = System.nanoTime();
+			w.lastread = w.lastwrite = now;
+			if( heartbeatinterval > 0 )
+				w.nextping = now + (long) ( jitter.nextDouble() * heartbeatinterval );
+			t.schedule( w, timerDeadline( w ) );
+		}
+	}
+
+	/** Returns the timers of the loop which owns <var>sel</var> or null if there are no timeouts to track. */
+	private HashedTimingWheel<WebSocketImpl> timersOf( Selector sel ) {
+		if( sel == selector )
+			return timers;
+		for( WebSocketSelector s : selectors ) {
+			if( s.selector == sel )
+				return s.timers;
+		}
+		return null;
+	}
+
+	/** Creates the timers of a selector loop or returns null if no timeouts are configured. */
+	private HashedTimingWheel<WebSocketImpl> createTimers() {
+		long shortest = Long.MAX_VALUE;
+		for( long timeout : new long[]{ readidle, writeidle, allidle, heartbeatinterval, pongtimeout } ) {
+			if( timeout > 0 )
+				shortest = Math.min( shortest, timeout );
+		}
+		if( shortest == Long.MAX_VALUE )
+			return null;
+		long tick = Math.min( TimeUnit.SECONDS.toNanos( 1 ), Math.max( TimeUnit.MILLISECONDS.toNanos( 10 ), shortest / 8 ) );
+		return new HashedTimingWheel<WebSocketImpl>( tick, TimeUnit.NANOSECONDS, 512 );
+	}
+
+	/** Returns the earlier of two {@link System#nanoTime()} values, treating Long.MAX_VALUE as none. */
+	private static long earliest( long deadline, long candidate ) {
+		if( candidate == Long.MAX_VALUE )
+			return deadline;
+		return deadline == Long.MAX_VALUE || candidate - deadline < 0 ? candidate : deadline;
+	}
+
+	/** Returns the {@link System#nanoTime()} at which the earliest of the idle timeouts of <var>conn</var> expires if nothing happens until then, or Long.MAX_VALUE if none is enabled. */
+	private long idleDeadline( WebSocketImpl conn ) {
+		long lastread = conn.lastread;
+		long lastwrite = conn.lastwrite;
+		long deadline = Long.MAX_VALUE;
+		if( readidle > 0 )
+			deadline = earliest( deadline, lastread + readidle );
+		if( writeidle > 0 )
+			deadline = earliest( deadline, lastwrite + writeidle );
+		if( allidle > 0 )
+			deadline = earliest( deadline, ( lastwrite - lastread > 0 ? lastwrite : lastread ) + allidle );
+		return deadline;
+	}
+
+	/** Returns the {@link System#nanoTime()} at which the next ping is due or the outstanding one times out, whichever comes first, or Long.MAX_VALUE if the heartbeat is disabled. */
+	private long heartbeatDeadline( WebSocketImpl conn ) {
+		if( heartbeatinterval == 0 )
+			return Long.MAX_VALUE;
+		long sent = conn.getPingSentTime();
+		if( sent == 0 || conn.isFlushAndClose() )
+			return conn.nextping;
+		// the pong may arrive before the timeout and the next ping be due earlier
+		return earliest( sent + pongtimeout, conn.nextping );
+	}
+
+	/** Returns the {@link System#nanoTime()} at which <var>conn</var> has to be looked at again by {@link #expireTimers(HashedTimingWheel, List)}. */
+	private long timerDeadline( WebSocketImpl conn ) {
+		return earliest( idleDeadline( conn ), heartbeatDeadline( conn ) );
+	}
+
+	/**
+	 * Sends the heartbeat pings which are due, closes the connections whose idle timeout expired or which did not answer a ping in time and schedules the connections again for their next deadline.<br>
+	 * Must only be called by the loop which owns <var>timers</var>.
+	 */
+	private void expireTimers( HashedTimingWheel<WebSocketImpl> timers, List<WebSocketImpl> expired ) {
+		long now = System.nanoTime();
+		if( timers.expire( now, expired ) == 0 )
+			return;
+		for( int i = 0 ; i < expired.size() ; i++ ) {
+			WebSocketImpl conn = expired.get( i );
+			if( conn.isClosed() )
+				continue;
+			if( timerDeadline( conn ) - now > 0 ) {
+				timers.schedule( conn, timerDeadline( conn ) );
+				continue;
+			}
+			try {
+				if( conn.isFlushAndClose() ) {
+					// the close frame could not be written within the timeout
+					conn.closeConnection( CloseFrame.ABNORMAL_CLOSE, "timed out while closing" );
+					continue;
+				}
+				long idle = idleDeadline( conn );
+				long sent = conn.getPingSentTime();
+				if( idle != Long.MAX_VALUE && idle - now <= 0 ) {
+					conn.close( CloseFrame.GOING_AWAY, "idle timeout" );
+				} else if( sent != 0 && now - sent >= pongtimeout ) {
+					conn.close( CloseFrame.GOING_AWAY, "pong timeout" );
+				} else {
+					if( sent == 0 && conn.isOpen() )
+						conn.sendTimestampPing();
+					conn.nextping = now + heartbeatinterval - heartbeatinterval / 10 + (long) ( jitter.nextDouble() * heartbeatinterval / 5 );
+				}
+				if( conn.isFlushAndClose() ) {
+					// give the close frame as much time as the timeout which expired
+					conn.lastread = conn.lastwrite = now;
+					conn.nextping = now + pongtimeout;
+				}
+			} catch ( RuntimeException e ) {
+				onError( conn, e );
+			}
+			if( !conn.isClosed() )
+				timers.schedule( conn, timerDeadline( conn ) );
+		}
+		expired.clear();
+	}
+
+	private void doRead( SelectionKey key, WebSocketImpl conn, Iterator<SelectionKey> i, List<WebSocketImpl> iqueue ) throws IOException , InterruptedException {
+		if( conn.inQueue.isFull() ) {
+			pauseRead( conn );
 			return;
 		}
-		queuesize.incrementAndGet();
-		buffers.put( createBuffer() );
+		ByteBuffer buf = takeBuffer();
+		if( buf == null ) {
+			starve( conn );
+			return;
+		}
+		try {
+			if( SocketChannelIOHelper.read( buf, conn, conn.channel ) ) {
+				if( buf.hasRemaining() ) {
+					if( readidle != 0 || allidle != 0 )
+						conn.lastread = System.nanoTime();
+					conn.inQueue.offer( buf );
+					queue( conn );
+					i.remove();
+					if( conn.channel instanceof WrappedByteChannel ) {
+						if( ( (WrappedByteChannel) conn.channel ).isNeedRead() ) {
+							iqueue.add( conn );
+						}
+					}
+				} else
+					pushBuffer( buf );
+			} else {
+				pushBuffer( buf );
+			}
+		} catch ( IOException e ) {
+			pushBuffer( buf );
+			throw e;
+		}
+	}
+
+	private void doWrite( SelectionKey key, WebSocketImpl conn ) throws IOException {
+		boolean tracked = writeidle != 0 || allidle != 0;
+		long before = tracked ? conn.getBufferedAmount() : 0;
+		if( SocketChannelIOHelper.batch( conn, conn.channel, writequantum ) ) {
+			if( key.isValid() )
+				updateInterestOps( conn );
+		}
+		if( tracked && conn.getBufferedAmount() < before )
+			conn.lastwrite = System.nanoTime();
 	}
 
-	protected void releaseBuffers( WebSocket c ) throws InterruptedException {
-		// queuesize.decrementAndGet();
-		// takeBuffer();
+	/**
+	 * Fetches the data which has already been read and decoded by a {@link WrappedByteChannel} but not yet been handed to the connections.<br>
+	 * Connections whose inQueue is full or for which there is no receive buffer are retried the next time the selector wakes up.
+	 */
+	private void doAdditionalRead( List<WebSocketImpl> iqueue ) throws IOException , InterruptedException {
+		List<WebSocketImpl> paused = null;
+		while ( !iqueue.isEmpty() ) {
+			WebSocketImpl conn = iqueue.remove( 0 );
+			ByteBuffer buf = conn.inQueue.isFull() ? null : takeBuffer();
+			if( buf == null ) {
+				if( paused == null )
+					paused = new ArrayList<WebSocketImpl>();
+				paused.add( conn );
+				if( conn.inQueue.isFull() )
+					pauseRead( conn );
+				else
+					starve( conn );
+				continue;
+			}
+			WrappedByteChannel c = ( (WrappedByteChannel) conn.channel );
+			try {
+				if( SocketChannelIOHelper.readMore( buf, conn, c ) )
+					iqueue.add( conn );
+				if( buf.hasRemaining() ) {
+					conn.inQueue.offer( buf );
+					queue( conn );
+				} else {
+					pushBuffer( buf );
+				}
+			} catch ( IOException e ) {
+				pushBuffer( buf );
+				handleIOException( conn.key, conn, e );
+			}
+		}
+		if( paused != null )
+			iqueue.addAll( paused );
 	}
 
-	public ByteBuffer createBuffer() {
-		return ByteBuffer.allocate( WebSocketImpl.RCVBUF );
+	/**
+	 * Stops reading from <var>conn</var> until its worker made room in its inQueue.<br>
+	 * Must only be called by the selector the connection is registered with.
+	 */
+	private void pauseRead( WebSocketImpl conn ) {
+		conn.readPaused = true;
+		updateInterestOps( conn );
+		if( !conn.inQueue.isFull() ) // the worker may have drained the queue before it could see the pause
+			resumeRead( conn );
 	}
 
-	private void queue( WebSocketImpl ws ) throws InterruptedException {
-		if( ws.workerThread == null ) {
-			ws.workerThread = decoders.get( queueinvokes % decoders.size() );
-			queueinvokes++;
+	private void resumeRead( WebSocketImpl conn ) {
+		conn.readPaused = false;
+		try {
+			updateInterestOps( conn );
+		} catch ( CancelledKeyException e ) {
+			// the connection is being closed
 		}
-		ws.workerThread.put( ws );
+		wakeup( conn );
 	}
 
-	private ByteBuffer takeBuffer() throws InterruptedException {
-		return buffers.take();
+	/**
+	 * Derives the interest set of the connections key from whether it may be read from and whether it has data to be written.<br>
+	 * The selector and the threads which send data both change the interest set. Computing it from the current state under a lock makes sure neither of them overwrites the demand of the other with a stale value.
+	 */
+	private void updateInterestOps( WebSocketImpl conn ) {
+		SelectionKey key = conn.key;
+		synchronized ( key ) {
+			key.interestOps( ( conn.readPaused ? 0 : SelectionKey.OP_READ ) | ( conn.hasBufferedData() ? SelectionKey.OP_WRITE : 0 ) );
+		}
 	}
 
-	private void pushBuffer( ByteBuffer buf ) throws InterruptedException {
-		if( buffers.size() > queuesize.intValue() )
+	/**
+	 * Schedules <var>ws</var> to have its inQueue decoded unless it is already waiting for or being decoded by a worker.<br>
+	 * The connection goes to the worker which decoded it last. Idle workers may steal it from there.<br>
+	 * Never blocks, so that neither the selectors nor the workers, which queue their connections again, can wait for each other: If the queues of all workers are full the connection goes to the {@link #overflow}, which the workers serve first. The selector keeps reading from it until its inQueue is full and then pauses reading as usual.
+	 */
+	private void queue( WebSocketImpl ws ) {
+		if( !ws.scheduled.compareAndSet( false, true ) )
 			return;
-		buffers.put( buf );
+		WebSocketWorker worker = ws.workerThread;
+		if( worker == null ) {
+			worker = decoders.get( queueinvokes.getAndIncrement() % decoders.size() );
+			ws.workerThread = worker;
+		}
+		if( !worker.offer( ws ) ) {
+			overflow.add( ws );
+			worker.wakeThief();
+		}
+	}
+
+	/** Returns the number of connections which are waiting for each {@link WebSocketWorker} in the order the workers have been created. */
+	public int[] getWorkerQueueDepths() {
+		int[] depths = new int[ decoders.size() ];
+		for( int i = 0 ; i < depths.length ; i++ ) {
+			depths[ i ] = decoders.get( i ).getQueueDepth();
+		}
+		return depths;
+	}
+
+	/**
+	 * Takes a receive buffer of {@link WebSocketImpl#RCVBUF} bytes from the pool or allocates an overflow buffer if the pool is exhausted.<br>
+	 * Never blocks.
+	 * 
+	 * @return null if neither is possible
+	 * @see #setOverflowBufferLimit(int)
+	 */
+	private ByteBuffer takeBuffer() {
+		ByteBuffer buf = bufferpool.acquire( WebSocketImpl.RCVBUF );
+		if( buf == null && overflowbuffers.get() < overflowlimit ) {
+			if( overflowbuffers.incrementAndGet() <= overflowlimit ) {
+				overflowallocations.incrementAndGet();
+				return ByteBuffer.allocate( WebSocketImpl.RCVBUF ); // the pool only contains direct buffers which tells them apart
+			}
+			overflowbuffers.decrementAndGet();
+		}
+		return buf;
+	}
+
+	/** Returns a receive buffer and lets a connection which starved for one resume reading. */
+	private void pushBuffer( ByteBuffer buf ) {
+		if( buf.isDirect() )
+			bufferpool.release( buf );
+		else
+			overflowbuffers.decrementAndGet();
+		WebSocketImpl conn;
+		while ( !starved.isEmpty() && ( conn = starved.poll() ) != null ) {
+			// skip connections which have been resumed otherwise or closed meanwhile, so that the buffer is not wasted on them
+			if( conn.readPaused && conn.key.isValid() ) {
+				resumeRead( conn );
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Stops reading from <var>conn</var> until a receive buffer is returned.<br>
+	 * Must only be called by the selector the connection is registered with.
+	 */
+	private void starve( WebSocketImpl conn ) {
+		starvations.incrementAndGet();
+		conn.readPaused = true;
+		starved.add( conn );
+		updateInterestOps( conn );
+		ByteBuffer buf = takeBuffer(); // a buffer may have been returned before the connection was added to the starved ones
+		if( buf != null )
+			pushBuffer( buf );
 	}
 
 	private void handleIOException( SelectionKey key, WebSocket conn, IOException ex ) {
@@ -489,43 +1423,106 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	}
 
 	@Override
-	public final void onWebsocketMessage( WebSocket conn, String message ) {
-		onMessage( conn, message );
+	public final void onWebsocketMessage( WebSocket conn, final String message ) {
+		SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onMessage( conn, message );
+			return;
+		}
+		mailbox.execute( new Callback( conn ) {
+			@Override
+			void call() {
+				onMessage( conn, message );
+			}
+		} );
 	}
 
 	@Override
 	@Deprecated
-	public/*final*/void onWebsocketMessageFragment( WebSocket conn, Framedata frame ) {// onFragment should be overloaded instead
-		onFragment( conn, frame );
+	public/*final*/void onWebsocketMessageFragment( WebSocket conn, final Framedata frame ) {// onFragment should be overloaded instead
+		SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onFragment( conn, frame );
+			return;
+		}
+		mailbox.execute( new Callback( conn ) {
+			@Override
+			void call() {
+				onFragment( conn, frame );
+			}
+		} );
+	}
+
+	@Override
+	public final void onWebsocketMessage( WebSocket conn, final ByteBuffer blob ) {
+		SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onMessage( conn, blob );
+			return;
+		}
+		mailbox.execute( new Callback( conn ) {
+			@Override
+			void call() {
+				onMessage( conn, blob );
+			}
+		} );
 	}
 
 	@Override
-	public final void onWebsocketMessage( WebSocket conn, ByteBuffer blob ) {
-		onMessage( conn, blob );
+	public final void onWebsocketMessageChunk( WebSocket conn, final ByteBuffer chunk, final boolean last ) {
+		SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onMessageChunk( conn, chunk, last );
+			return;
+		}
+		mailbox.execute( new Callback( conn ) {
+			@Override
+			void call() {
+				onMessageChunk( conn, chunk, last );
+			}
+		} );
 	}
 
 	@Override
-	public final void onWebsocketOpen( WebSocket conn, Handshakedata handshake ) {
+	public final void onWebsocketOpen( WebSocket conn, final Handshakedata handshake ) {
+		long id = ( (WebSocketImpl) conn ).getId();
+		if( id != 0 )
+			connectionsbyid.put( id, conn );
 		if( addConnection( conn ) ) {
-			onOpen( conn, (ClientHandshake) handshake );
+			SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+			if( mailbox == null ) {
+				onOpen( conn, (ClientHandshake) handshake );
+				return;
+			}
+			mailbox.execute( new Callback( conn ) {
+				@Override
+				void call() {
+					onOpen( conn, (ClientHandshake) handshake );
+				}
+			} );
 		}
 	}
 
 	@Override
-	public final void onWebsocketClose( WebSocket conn, int code, String reason, boolean remote ) {
-		selector.wakeup();
-		try {
-			if( removeConnection( conn ) ) {
+	public final void onWebsocketClose( WebSocket conn, final int code, final String reason, final boolean remote ) {
+		wakeup( (WebSocketImpl) conn );
+		topics.unsubscribeAll( conn );
+		long id = ( (WebSocketImpl) conn ).getId();
+		if( id != 0 )
+			connectionsbyid.remove( id, conn );
+		if( removeConnection( conn ) ) {
+			SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+			if( mailbox == null ) {
 				onClose( conn, code, reason, remote );
+				return;
 			}
-		} finally {
-			try {
-				releaseBuffers( conn );
-			} catch ( InterruptedException e ) {
-				Thread.currentThread().interrupt();
-			}
+			mailbox.execute( new Callback( conn ) {
+				@Override
+				void call() {
+					onClose( conn, code, reason, remote );
+				}
+			} );
 		}
-
 	}
 
 	/**
@@ -536,10 +1533,14 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	 **/
 	protected boolean removeConnection( WebSocket ws ) {
 		boolean removed;
-		synchronized ( connections ) {
+		if( connections instanceof ConnectionRegistry ) {
 			removed = this.connections.remove( ws );
-			assert ( removed );
+		} else {
+			synchronized ( connections ) {
+				removed = this.connections.remove( ws );
+			}
 		}
+		assert ( removed );
 		if( isclosed.get() && connections.size() == 0 ) {
 			selectorthread.interrupt();
 		}
@@ -553,11 +1554,16 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	/** @see #removeConnection(WebSocket) */
 	protected boolean addConnection( WebSocket ws ) {
 		if( !isclosed.get() ) {
-			synchronized ( connections ) {
-				boolean succ = this.connections.add( ws );
-				assert ( succ );
-				return succ;
+			boolean succ;
+			if( connections instanceof ConnectionRegistry ) {
+				succ = this.connections.add( ws );
+			} else {
+				synchronized ( connections ) {
+					succ = this.connections.add( ws );
+				}
 			}
+			assert ( succ );
+			return succ;
 		} else {
 			// This case will happen when a new connection gets ready while the server is already stopping.
 			ws.close( CloseFrame.GOING_AWAY );
@@ -569,31 +1575,70 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	 *            may be null if the error does not belong to a single connection
 	 */
 	@Override
-	public final void onWebsocketError( WebSocket conn, Exception ex ) {
-		onError( conn, ex );
+	public final void onWebsocketError( final WebSocket conn, final Exception ex ) {
+		SerialExecutor mailbox = conn == null ? null : ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onError( conn, ex );
+			return;
+		}
+		mailbox.execute( new Runnable() {
+			@Override
+			public void run() {
+				onError( conn, ex );
+			}
+		} );
 	}
 
 	@Override
 	public final void onWriteDemand( WebSocket w ) {
 		WebSocketImpl conn = (WebSocketImpl) w;
 		try {
-			conn.key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+			updateInterestOps( conn );
 		} catch ( CancelledKeyException e ) {
 			// the thread which cancels key is responsible for possible cleanup
-			conn.outQueue.clear();
+			conn.clearQueued();
 		}
-		selector.wakeup();
+		wakeup( conn );
 	}
 
-	@Override
-	public void onWebsocketCloseInitiated( WebSocket conn, int code, String reason ) {
-		onCloseInitiated( conn, code, reason );
+	/** Wakes up the selector the given connection is registered with. */
+	private void wakeup( WebSocketImpl conn ) {
+		SelectionKey key = conn.key;
+		if( key != null ) {
+			key.selector().wakeup();
+		} else if( selector != null ) {
+			selector.wakeup();
+		}
 	}
 
 	@Override
-	public void onWebsocketClosing( WebSocket conn, int code, String reason, boolean remote ) {
-		onClosing( conn, code, reason, remote );
+	public void onWebsocketCloseInitiated( WebSocket conn, final int code, final String reason ) {
+		SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onCloseInitiated( conn, code, reason );
+			return;
+		}
+		mailbox.execute( new Callback( conn ) {
+			@Override
+			void call() {
+				onCloseInitiated( conn, code, reason );
+			}
+		} );
+	}
 
+	@Override
+	public void onWebsocketClosing( WebSocket conn, final int code, final String reason, final boolean remote ) {
+		SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onClosing( conn, code, reason, remote );
+			return;
+		}
+		mailbox.execute( new Callback( conn ) {
+			@Override
+			void call() {
+				onClosing( conn, code, reason, remote );
+			}
+		} );
 	}
 
 	public void onCloseInitiated( WebSocket conn, int code, String reason ) {
@@ -603,6 +1648,75 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 
 	}
 
+	@Override
+	public final void onWebsocketWritabilityChanged( WebSocket conn, final boolean writable ) {
+		SerialExecutor mailbox = ( (WebSocketImpl) conn ).mailbox;
+		if( mailbox == null ) {
+			onWritabilityChanged( conn, writable );
+			return;
+		}
+		mailbox.execute( new Callback( conn ) {
+			@Override
+			void call() {
+				onWritabilityChanged( conn, writable );
+			}
+		} );
+	}
+
+	/** A callback which is run by the mailbox of its connection. Like on the workers, exceptions thrown by the callback are passed to {@link #onError(WebSocket, Exception)}. */
+	private abstract class Callback implements Runnable {
+		final WebSocket conn;
+
+		Callback( WebSocket conn ) {
+			this.conn = conn;
+		}
+
+		abstract void call();
+
+		@Override
+		public void run() {
+			try {
+				call();
+			} catch ( RuntimeException e ) {
+				onError( conn, e );
+			}
+		}
+	}
+
+	/** The mailbox of a connection; see {@link #setApplicationExecutor(Executor, int)} */
+	private class Mailbox extends SerialExecutor {
+		final WebSocketImpl conn;
+		/** Set while the worker does not decode the connection because too many callbacks are pending */
+		final AtomicBoolean suspended = new AtomicBoolean( false );
+
+		Mailbox( WebSocketImpl conn ) {
+			super( applicationexecutor );
+			this.conn = conn;
+		}
+
+		@Override
+		protected void afterExecute( Runnable task ) {
+			if( suspended.get() && getPending() <= maxpendingcallbacks / 2 && suspended.compareAndSet( true, false ) ) {
+				queue( conn );
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the worker has to stop decoding <var>ws</var> because too many of its callbacks are pending. In that case the mailbox of the connection queues it again once it caught up.
+	 */
+	private boolean suspendDecoding( WebSocketImpl ws ) {
+		Mailbox mailbox = (Mailbox) ws.mailbox;
+		if( mailbox == null || mailbox.getPending() < maxpendingcallbacks )
+			return false;
+		mailbox.suspended.set( true );
+		// the mailbox may have caught up before it could see the flag
+		if( mailbox.getPending() >= maxpendingcallbacks )
+			return true;
+		mailbox.suspended.set( false );
+		return false;
+	}
+
 	public final void setWebSocketFactory( WebSocketServerFactory wsf ) {
 		this.wsf = wsf;
 	}
@@ -678,12 +1792,42 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	public void onFragment( WebSocket conn, Framedata fragment ) {
 	}
 
+	/**
+	 * Callback for the chunks of binary messages if they are streamed, see {@link #setStreamingMessages(boolean)}.
+	 * 
+	 * @param last
+	 *            whether <var>chunk</var> completes the message
+	 */
+	public void onMessageChunk( WebSocket conn, ByteBuffer chunk, boolean last ) {
+	}
+
+	/**
+	 * Called when the amount of data queued for <var>conn</var> rose above its high watermark (<var>writable</var> is false) or fell back to its low watermark after it has been written to the socket (<var>writable</var> is true).<br>
+	 * Producers can use it to stop sending to a slow client until its queue has drained. The change back to writable is reported by the selector thread, so this method should return quickly.
+	 * 
+	 * @see WebSocket#setWriteBufferWatermarks(long, long)
+	 * @see WebSocket#getBufferedAmount()
+	 */
+	public void onWritabilityChanged( WebSocket conn, boolean writable ) {
+	}
+
+	/**
+	 * Decodes the buffers the selector threads put into the inQueues of the connections.<br>
+	 * A connection is only ever decoded by one worker at a time which preserves the order of its frames, but it is not pinned to a worker:
+	 * A worker which runs out of connections steals a waiting one from the worker with the longest queue and keeps it until it is stolen again.
+	 */
 	public class WebSocketWorker extends Thread {
 
-		private BlockingQueue<WebSocketImpl> iqueue;
+		/** The connections which are scheduled on this worker. Every connection is contained at most once in all the workers queues. */
+		private final MpmcArrayQueue<WebSocketImpl> iqueue;
+
+		/** Set while the worker is parked or about to park. Cleared by the first producer which unparks the worker. */
+		private final AtomicBoolean waiting = new AtomicBoolean( false );
+
+		private volatile long stolen = 0;
 
 		public WebSocketWorker() {
-			iqueue = new LinkedBlockingQueue<WebSocketImpl>();
+			iqueue = new MpmcArrayQueue<WebSocketImpl>( WORKER_QUEUE_CAPACITY );
 			setName( "WebSocketWorker-" + getId() );
 			setUncaughtExceptionHandler( new UncaughtExceptionHandler() {
 				@Override
@@ -693,24 +1837,147 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 			} );
 		}
 
-		public void put( WebSocketImpl ws ) throws InterruptedException {
-			iqueue.put( ws );
+		/**
+		 * Hands a connection with new buffers in its inQueue over to this worker.<br>
+		 * If this worker is busy and already has connections waiting an idle worker is woken up to steal some of them.<br>
+		 * If the queue is full the connection is given to an other worker.
+		 * 
+		 * @return false if the queues of all workers are full
+		 */
+		public boolean offer( WebSocketImpl ws ) {
+			WebSocketWorker target = this;
+			if( !iqueue.offer( ws ) ) {
+				target = null;
+				for( int i = 0 ; i < decoders.size() ; i++ ) {
+					WebSocketWorker w = decoders.get( i );
+					if( w.iqueue.offer( ws ) ) {
+						target = w;
+						break;
+					}
+				}
+				if( target == null )
+					return false;
+			}
+			if( target.waiting.get() && target.waiting.compareAndSet( true, false ) ) {
+				LockSupport.unpark( target );
+			} else if( target.iqueue.size() > 1 ) {
+				target.wakeThief();
+			}
+			return true;
+		}
+
+		/** Returns the number of connections which are waiting to be decoded by this worker. */
+		public int getQueueDepth() {
+			return iqueue.size();
+		}
+
+		/** Returns how many connections this worker has taken from the queues of other workers. */
+		public long getStolenCount() {
+			return stolen;
+		}
+
+		private void wakeThief() {
+			for( int i = 0 ; i < decoders.size() ; i++ ) {
+				WebSocketWorker w = decoders.get( i );
+				if( w != this && w.waiting.get() && w.waiting.compareAndSet( true, false ) ) {
+					LockSupport.unpark( w );
+					return;
+				}
+			}
+		}
+
+		/** Takes a connection from the worker with the longest queue. */
+		private WebSocketImpl steal( int mindepth ) {
+			WebSocketWorker victim = null;
+			int max = mindepth - 1;
+			for( int i = 0 ; i < decoders.size() ; i++ ) {
+				WebSocketWorker w = decoders.get( i );
+				if( w != this ) {
+					int depth = w.iqueue.size();
+					if( depth > max ) {
+						max = depth;
+						victim = w;
+					}
+				}
+			}
+			if( victim == null )
+				return null;
+			WebSocketImpl ws = victim.iqueue.poll();
+			if( ws != null )
+				stolen++;
+			return ws;
+		}
+
+		/** Waits until there is work for this worker according to {@link WebSocketServer#setWorkerIdleStrategy(int, int)} */
+		private void idle( int round ) throws InterruptedException {
+			int spins = workerspins;
+			if( round < spins ) {
+				return;
+			} else if( round < spins + workeryields ) {
+				Thread.yield();
+			} else {
+				waiting.set( true );
+				if( iqueue.isEmpty() && overflow.isEmpty() && !hasStealableWork() )
+					LockSupport.park( this );
+				waiting.set( false );
+			}
+			if( isInterrupted() )
+				throw new InterruptedException();
+		}
+
+		/** Mirrors the condition under which {@link #offer(WebSocketImpl)} wakes up a thief. */
+		private boolean hasStealableWork() {
+			for( int i = 0 ; i < decoders.size() ; i++ ) {
+				WebSocketWorker w = decoders.get( i );
+				if( w != this && w.iqueue.size() > 1 )
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Decodes at most as many buffers as the inQueue of <var>ws</var> can hold, so that a single busy connection can not starve the others, and reschedules the connection if more data arrived meanwhile.
+		 */
+		private void process( WebSocketImpl ws ) {
+			ws.workerThread = this;
+			int budget = ws.inQueue.capacity();
+			boolean suspended = false;
+			ByteBuffer buf;
+			while ( budget-- > 0 && !( suspended = suspendDecoding( ws ) ) && ( buf = ws.inQueue.poll() ) != null ) {
+				if( ws.readPaused )
+					resumeRead( ws );
+				try {
+					ws.decode( buf );
+				} finally {
+					pushBuffer( buf );
+				}
+			}
+			ws.scheduled.set( false );
+			// a suspended connection is queued again by its mailbox, unless that already happened while it was still scheduled
+			if( !ws.inQueue.isEmpty() && ( !suspended || !( (Mailbox) ws.mailbox ).suspended.get() ) )
+				queue( ws );
 		}
 
 		@Override
 		public void run() {
 			WebSocketImpl ws = null;
 			try {
+				int idle = 0;
 				while ( true ) {
-					ByteBuffer buf = null;
-					ws = iqueue.take();
-					buf = ws.inQueue.poll();
-					assert ( buf != null );
-					try {
-						ws.decode( buf );
-					} finally {
-						pushBuffer( buf );
+					// the overflow only fills up while all queues are full, so it is served first to not leave its connections behind
+					ws = overflow.isEmpty() ? null : overflow.poll();
+					if( ws == null )
+						ws = iqueue.poll();
+					if( ws == null )
+						ws = steal( 1 );
+					if( ws == null ) {
+						idle( idle );
+						if( idle < Integer.MAX_VALUE )
+							idle++;
+						continue;
 					}
+					idle = 0;
+					process( ws );
 				}
 			} catch ( InterruptedException e ) {
 			} catch ( RuntimeException e ) {
@@ -719,6 +1986,127 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		}
 	}
 
+	/**
+	 * A selector loop which performs the reads and writes of the connections the selectorthread hands over to it.<br>
+	 * In {@link WebSocketServer#setReusePort(boolean) reuseport} mode it also accepts the connections from its own listening channel.
+	 * 
+	 * @see WebSocketServer#setSelectorCount(int)
+	 */
+	public class WebSocketSelector extends Thread {
+
+		private final Selector selector;
+
+		/** connections which have been accepted but not yet been registered with {@link #selector} */
+		private final Queue<WebSocketImpl> pending = new ConcurrentLinkedQueue<WebSocketImpl>();
+
+		private final List<WebSocketImpl> iqueue = new LinkedList<WebSocketImpl>();
+
+		/** the own listening channel in reuseport mode, otherwise null */
+		private ServerSocketChannel listener;
+
+		private final HashedTimingWheel<WebSocketImpl> timers;
+		private final List<WebSocketImpl> expired = new ArrayList<WebSocketImpl>();
+
+		public WebSocketSelector() throws IOException {
+			selector = Selector.open();
+			timers = createTimers();
+			setName( "WebSocketSelector-" + getId() );
+		}
+
+		/** Makes this loop accept the connections of <var>listener</var>. Must be called before the loop is started. */
+		private void listen( ServerSocketChannel listener ) throws IOException {
+			this.listener = listener;
+			listener.register( selector, SelectionKey.OP_ACCEPT );
+		}
+
+		/**
+		 * Hands a freshly accepted connection over to this loop.<br>
+		 * The channel is registered by the loop itself because registering blocks while the selector is selecting.
+		 */
+		public void put( WebSocketImpl ws, SocketChannel channel ) {
+			ws.channel = channel;
+			pending.add( ws );
+			selector.wakeup();
+		}
+
+		private void registerPending() throws InterruptedException {
+			WebSocketImpl ws;
+			while ( ( ws = pending.poll() ) != null ) {
+				SocketChannel channel = (SocketChannel) ws.channel;
+				try {
+					register( ws, channel, selector );
+				} catch ( IOException e ) {
+					if( ws.key != null )
+						ws.key.cancel();
+					handleIOException( ws.key, null, e );
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while ( !isInterrupted() ) {
+					SelectionKey key = null;
+					WebSocketImpl conn = null;
+					try {
+						selector.select( timers == null ? 0 : timers.getTick( TimeUnit.MILLISECONDS ) );
+						registerPending();
+						Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+						while ( i.hasNext() ) {
+							key = i.next();
+							conn = null;
+							if( !key.isValid() ) {
+								continue;
+							}
+							if( key.isAcceptable() ) {
+								if( !onConnect( key ) ) {
+									key.cancel();
+									continue;
+								}
+								i.remove();
+								doAccept( listener, selector );
+								continue;
+							}
+							if( key.isReadable() ) {
+								conn = (WebSocketImpl) key.attachment();
+								doRead( key, conn, i, iqueue );
+							}
+							if( key.isWritable() ) {
+								conn = (WebSocketImpl) key.attachment();
+								doWrite( key, conn );
+							}
+						}
+						conn = null;
+						doAdditionalRead( iqueue );
+						if( timers != null )
+							expireTimers( timers, expired );
+					} catch ( CancelledKeyException e ) {
+						// an other thread may cancel the key
+					} catch ( ClosedByInterruptException e ) {
+						return;
+					} catch ( IOException ex ) {
+						if( key != null )
+							key.cancel();
+						handleIOException( key, conn, ex );
+					} catch ( InterruptedException e ) {
+						return;
+					}
+				}
+			} catch ( RuntimeException e ) {
+				handleFatal( null, e );
+			} finally {
+				try {
+					if( listener != null )
+						listener.close();
+					selector.close();
+				} catch ( IOException e ) {
+					onError( null, e );
+				}
+			}
+		}
+	}
+
 	public interface WebSocketServerFactory extends WebSocketFactory {
 		@Override
 		public WebSocketImpl createWebSocket( WebSocketAdapter a, Draft d, Socket s );
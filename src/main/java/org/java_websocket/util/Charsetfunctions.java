@@ -48,6 +48,15 @@ public class Charsetfunctions {
 		}
 	}
 
+	/**
+	 * Decodes the remaining bytes of <var>buffer</var> without moving its position. Unlike <code>buffer.array()</code> this also works for direct buffers.
+	 */
+	public static String stringAscii( ByteBuffer buffer ) {
+		byte[] bytes = new byte[ buffer.remaining() ];
+		buffer.duplicate().get( bytes );
+		return stringAscii( bytes );
+	}
+
 	public static String stringUtf8( byte[] bytes ) throws InvalidDataException {
 		return stringUtf8( ByteBuffer.wrap( bytes ) );
 	}
@@ -0,0 +1,361 @@
+package org.java_websocket.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct {@link ByteBuffer}s which are carved from large slabs.<br>
+ * Requested sizes are rounded up to the next power of two between {@link #getMinBufferSize()} and {@link #getMaxBufferSize()}. Every such size class has its own free list.<br>
+ * Each thread keeps a small cache of free buffers per size class, which it refills from and spills to the shared free lists in batches, so that acquiring and releasing a buffer usually does not take a lock.<br>
+ * The memory of all slabs together never exceeds {@link #getCapacity()}. Requests larger than the largest size class are served with dedicated direct buffers which also count against the capacity but are not pooled.<br>
+ * <br>
+ * Buffers must only be released once and must not be used after they have been released.<br>
+ * Buffers which sit in the cache of a thread are not available to other threads. To keep a thread which only releases buffers from hoarding the buffers an other thread waits for, a cache holds at most a 64th of the buffers the capacity allows for and releases bypass the caches while a thread waits in {@link #take(int)} or after {@link #acquire(int)} failed. Pools whose capacity is only a few buffers therefore do not cache at all.<br>
+ * The buffers in the cache of a thread which ended are moved back to the shared free lists when an other thread starts using the pool or when the shared free list of a size class runs empty.
+ */
+public class DirectBufferPool {
+
+	/** The memory limit of pools which have been created without specifying one. */
+	public static long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+	public static int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+	/** The maximum number of free buffers per size class each thread may keep for itself. */
+	public static int THREAD_CACHE_SIZE = 32;
+
+	private final long capacity;
+	private final int minshift;
+	private final int maxshift;
+	private final int slabsize;
+
+	/** One free list per size class, also used as the lock of that list */
+	private final ArrayDeque<ByteBuffer>[] freelists;
+	/** The number of buffers each thread may cache per size class */
+	private final int[] cachelimits;
+	/** The number of threads waiting in {@link #take(int)} */
+	private final AtomicInteger waiters = new AtomicInteger();
+	/** Set when {@link #acquire(int)} failed and cleared once a buffer could be taken from the shared free lists again */
+	private volatile boolean exhausted = false;
+
+	private final AtomicLong allocated = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong outstanding = new AtomicLong();
+
+	/** The free buffers a thread keeps for itself, one stack per size class */
+	private final class ThreadCache {
+		final Thread owner = Thread.currentThread();
+		final ByteBuffer[][] stacks = new ByteBuffer[ freelists.length ][];
+		final int[] sizes = new int[ freelists.length ];
+	}
+
+	/** The caches of all threads which use this pool, so that the buffers of threads which ended can be reclaimed */
+	private final List<ThreadCache> threadcaches = new ArrayList<ThreadCache>();
+
+	private final ThreadLocal<ThreadCache> caches = new ThreadLocal<ThreadCache>() {
+		@Override
+		protected ThreadCache initialValue() {
+			reclaim();
+			ThreadCache cache = new ThreadCache();
+			synchronized ( threadcaches ) {
+				threadcaches.add( cache );
+			}
+			return cache;
+		}
+	};
+
+	public DirectBufferPool() {
+		this( DEFAULT_CAPACITY );
+	}
+
+	public DirectBufferPool( long capacity ) {
+		this( capacity, 1024, 64 * 1024, DEFAULT_SLAB_SIZE );
+	}
+
+	/**
+	 * @param capacity
+	 *            the maximum number of bytes this pool will allocate
+	 * @param minsize
+	 *            the smallest size class
+	 * @param maxsize
+	 *            the largest size class
+	 * @param slabsize
+	 *            the number of bytes allocated at once to be split into buffers of one size class
+	 */
+	@SuppressWarnings("unchecked")
+	public DirectBufferPool( long capacity , int minsize , int maxsize , int slabsize ) {
+		if( capacity < 1 || minsize < 1 || maxsize < minsize || slabsize < 1 )
+			throw new IllegalArgumentException( "capacity and sizes must be positive and minsize must not exceed maxsize" );
+		this.capacity = capacity;
+		this.minshift = shift( minsize );
+		this.maxshift = shift( maxsize );
+		this.slabsize = slabsize;
+		freelists = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[ maxshift - minshift + 1 ];
+		cachelimits = new int[ freelists.length ];
+		for( int i = 0 ; i < freelists.length ; i++ ) {
+			freelists[ i ] = new ArrayDeque<ByteBuffer>();
+			cachelimits[ i ] = (int) Math.max( 0, Math.min( THREAD_CACHE_SIZE, ( capacity >> ( minshift + i ) ) / 64 ) );
+		}
+	}
+
+	/** @return the exponent of the smallest power of two which is not smaller than size */
+	private static int shift( int size ) {
+		return 32 - Integer.numberOfLeadingZeros( size - 1 );
+	}
+
+	/**
+	 * Returns a cleared buffer with a capacity of at least <var>size</var> bytes or null if the pool has reached its capacity.
+	 */
+	public ByteBuffer acquire( int size ) {
+		if( size < 1 )
+			throw new IllegalArgumentException( "size must be positive" );
+		int shift = Math.max( shift( size ), minshift );
+		if( shift > maxshift ) {
+			return allocateUnpooled( size );
+		}
+		int sizeclass = shift - minshift;
+		ThreadCache threadcache = caches.get();
+		ByteBuffer[][] cache = threadcache.stacks;
+		int[] cachesize = threadcache.sizes;
+		if( cachesize[ sizeclass ] == 0 ) {
+			if( refill( sizeclass, cache, cachesize ) || reclaim() && refill( sizeclass, cache, cachesize ) ) {
+				if( exhausted )
+					exhausted = false;
+				hits.incrementAndGet();
+			} else if( allocateSlab( sizeclass, cache, cachesize ) ) {
+				misses.incrementAndGet();
+			} else {
+				exhausted = true;
+				return null;
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+		ByteBuffer buf = cache[ sizeclass ][ --cachesize[ sizeclass ] ];
+		cache[ sizeclass ][ cachesize[ sizeclass ] ] = null;
+		outstanding.incrementAndGet();
+		buf.clear();
+		buf.order( ByteOrder.BIG_ENDIAN );
+		return buf;
+	}
+
+	/**
+	 * Like {@link #acquire(int)} but waits until an other thread releases a buffer if the pool has reached its capacity.
+	 */
+	public ByteBuffer take( int size ) throws InterruptedException {
+		ByteBuffer buf = acquire( size );
+		if( buf != null )
+			return buf;
+		int shift = Math.max( shift( size ), minshift );
+		ArrayDeque<ByteBuffer> freelist = freelists[ Math.min( shift, maxshift ) - minshift ];
+		waiters.incrementAndGet();
+		try {
+			// acquire is not called under the lock, since reclaiming the caches of dead threads locks other free lists
+			while ( ( buf = acquire( size ) ) == null ) {
+				synchronized ( freelist ) {
+					freelist.wait( 10 ); // unpooled buffers, buffers of other size classes and buffers released before this thread started waiting do not notify this list
+				}
+			}
+		} finally {
+			waiters.decrementAndGet();
+		}
+		return buf;
+	}
+
+	/**
+	 * Returns a buffer which has been obtained from {@link #acquire(int)} or {@link #take(int)} to the pool.
+	 */
+	public void release( ByteBuffer buf ) {
+		if( !buf.isDirect() )
+			throw new IllegalArgumentException( "the buffer does not belong to this pool" );
+		int shift = shift( buf.capacity() );
+		if( shift > maxshift ) {
+			allocated.addAndGet( -buf.capacity() );
+			outstanding.decrementAndGet();
+			return;
+		}
+		if( shift < minshift || buf.capacity() != 1 << shift )
+			throw new IllegalArgumentException( "the buffer does not belong to this pool" );
+		outstanding.decrementAndGet();
+		int sizeclass = shift - minshift;
+		if( exhausted || waiters.get() > 0 || cachelimits[ sizeclass ] == 0 ) {
+			ArrayDeque<ByteBuffer> freelist = freelists[ sizeclass ];
+			synchronized ( freelist ) {
+				freelist.push( buf );
+				freelist.notifyAll();
+			}
+			return;
+		}
+		ThreadCache threadcache = caches.get();
+		ByteBuffer[][] cache = threadcache.stacks;
+		int[] cachesize = threadcache.sizes;
+		if( cache[ sizeclass ] == null )
+			cache[ sizeclass ] = new ByteBuffer[ Math.max( 1, cachelimits[ sizeclass ] ) ];
+		if( cachesize[ sizeclass ] == cache[ sizeclass ].length )
+			spill( sizeclass, cache, cachesize );
+		cache[ sizeclass ][ cachesize[ sizeclass ]++ ] = buf;
+	}
+
+	/** Moves half of the thread's cached buffers of the given size class to the shared free list. */
+	private void spill( int sizeclass, ByteBuffer[][] cache, int[] cachesize ) {
+		ArrayDeque<ByteBuffer> freelist = freelists[ sizeclass ];
+		ByteBuffer[] stack = cache[ sizeclass ];
+		synchronized ( freelist ) {
+			for( int n = Math.max( 1, stack.length / 2 ) ; n > 0 ; n-- ) {
+				int i = --cachesize[ sizeclass ];
+				freelist.push( stack[ i ] );
+				stack[ i ] = null;
+			}
+		}
+	}
+
+	/** Moves up to half a cache worth of buffers from the shared free list into the thread's cache. */
+	private boolean refill( int sizeclass, ByteBuffer[][] cache, int[] cachesize ) {
+		if( cache[ sizeclass ] == null )
+			cache[ sizeclass ] = new ByteBuffer[ Math.max( 1, cachelimits[ sizeclass ] ) ];
+		ByteBuffer[] stack = cache[ sizeclass ];
+		ArrayDeque<ByteBuffer> freelist = freelists[ sizeclass ];
+		synchronized ( freelist ) {
+			for( int n = Math.max( 1, stack.length / 2 ) ; n > 0 && !freelist.isEmpty() ; n-- ) {
+				stack[ cachesize[ sizeclass ]++ ] = freelist.pop();
+			}
+		}
+		return cachesize[ sizeclass ] > 0;
+	}
+
+	/**
+	 * Moves the buffers cached by threads which ended to the shared free lists.<br>
+	 * The caches of dead threads are removed from the registry first, so that no free list lock is taken while the registry is locked.
+	 * 
+	 * @return whether any buffers were reclaimed
+	 */
+	private boolean reclaim() {
+		List<ThreadCache> dead = null;
+		synchronized ( threadcaches ) {
+			for( int i = threadcaches.size() - 1 ; i >= 0 ; i-- ) {
+				if( !threadcaches.get( i ).owner.isAlive() ) {
+					if( dead == null )
+						dead = new ArrayList<ThreadCache>();
+					dead.add( threadcaches.remove( i ) );
+				}
+			}
+		}
+		if( dead == null )
+			return false;
+		boolean reclaimed = false;
+		// a thread which ended can not touch its cache anymore and isAlive() makes its last writes visible
+		for( int i = 0 ; i < dead.size() ; i++ ) {
+			ThreadCache cache = dead.get( i );
+			for( int sizeclass = 0 ; sizeclass < freelists.length ; sizeclass++ ) {
+				if( cache.sizes[ sizeclass ] == 0 )
+					continue;
+				ArrayDeque<ByteBuffer> freelist = freelists[ sizeclass ];
+				synchronized ( freelist ) {
+					while ( cache.sizes[ sizeclass ] > 0 ) {
+						int n = --cache.sizes[ sizeclass ];
+						freelist.push( cache.stacks[ sizeclass ][ n ] );
+						cache.stacks[ sizeclass ][ n ] = null;
+					}
+					freelist.notifyAll();
+				}
+				reclaimed = true;
+			}
+		}
+		return reclaimed;
+	}
+
+	/** Allocates a new slab for the given size class and puts its buffers into the thread's cache and the shared free list. */
+	private boolean allocateSlab( int sizeclass, ByteBuffer[][] cache, int[] cachesize ) {
+		int buffersize = 1 << ( sizeclass + minshift );
+		int count = Math.max( 1, slabsize / buffersize );
+		int bytes = count * buffersize;
+		if( !reserve( bytes ) ) {
+			count = (int) Math.min( count, ( capacity - allocated.get() ) / buffersize );
+			bytes = count * buffersize;
+			if( count == 0 || !reserve( bytes ) )
+				return false;
+		}
+		ByteBuffer slab = ByteBuffer.allocateDirect( bytes );
+		ByteBuffer[] stack = cache[ sizeclass ];
+		ArrayDeque<ByteBuffer> freelist = freelists[ sizeclass ];
+		synchronized ( freelist ) {
+			for( int i = 0 ; i < count ; i++ ) {
+				slab.limit( ( i + 1 ) * buffersize );
+				slab.position( i * buffersize );
+				ByteBuffer buf = slab.slice();
+				if( cachesize[ sizeclass ] < Math.max( 1, stack.length / 2 ) )
+					stack[ cachesize[ sizeclass ]++ ] = buf;
+				else
+					freelist.push( buf );
+			}
+		}
+		return true;
+	}
+
+	private ByteBuffer allocateUnpooled( int size ) {
+		if( !reserve( size ) ) {
+			exhausted = true;
+			return null;
+		}
+		misses.incrementAndGet();
+		outstanding.incrementAndGet();
+		return ByteBuffer.allocateDirect( size );
+	}
+
+	private boolean reserve( long bytes ) {
+		while ( true ) {
+			long current = allocated.get();
+			if( current + bytes > capacity )
+				return false;
+			if( allocated.compareAndSet( current, current + bytes ) )
+				return true;
+		}
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/** Returns the number of bytes which have been allocated for slabs and unpooled buffers. */
+	public long getAllocatedBytes() {
+		return allocated.get();
+	}
+
+	/** Returns how often a buffer could be served from a cache or a free list. */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Returns how often new memory had to be allocated to serve a buffer. */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Returns whether the last attempt to acquire a buffer failed because the pool reached its capacity. */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/** Returns the number of buffers which have been acquired but not yet released. */
+	public long getOutstanding() {
+		return outstanding.get();
+	}
+
+	public int getMinBufferSize() {
+		return 1 << minshift;
+	}
+
+	public int getMaxBufferSize() {
+		return 1 << maxshift;
+	}
+
+	@Override
+	public String toString() {
+		return "DirectBufferPool{ allocated:" + allocated.get() + "/" + capacity + ", hits:" + hits.get() + ", misses:" + misses.get() + ", outstanding:" + outstanding.get() + "}";
+	}
+}
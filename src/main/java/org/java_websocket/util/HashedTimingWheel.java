@@ -0,0 +1,117 @@
+package org.java_websocket.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel for a large number of coarse timeouts which are driven by a single thread, e.g. a selector loop.<br>
+ * Time is divided into ticks and every item is put into the bucket of the tick its deadline falls into, so that scheduling takes constant time. {@link #expire(long, Collection)} only looks at the buckets of the ticks which passed since its last call. Deadlines further away than one revolution of the wheel stay in their bucket until the revolution in which they are due.<br>
+ * Items are handed out at most about one tick after their deadline and never before it.<br>
+ * Items can not be cancelled. Owners are expected to check whether an expired item is still relevant and to schedule it again if its deadline moved, which keeps frequent events like reads from touching the wheel at all.<br>
+ * Buckets are plain arrays which are reused, so the wheel does not allocate once its buckets have grown to their working size.<br>
+ * The wheel is not thread safe.
+ */
+public class HashedTimingWheel<T> {
+
+	private final long ticknanos;
+	private final int mask;
+	private final Object[][] items;
+	private final long[][] deadlines;
+	private final int[] sizes;
+	/** The {@link System#nanoTime()} tick 0 starts at */
+	private final long origin;
+	/** The last tick which has been expired */
+	private long lasttick;
+	private int size = 0;
+
+	/**
+	 * @param tick
+	 *            the resolution of the wheel
+	 * @param ticksperwheel
+	 *            the number of buckets, rounded up to the next power of two
+	 */
+	public HashedTimingWheel( long tick , TimeUnit unit , int ticksperwheel ) {
+		if( tick < 1 || ticksperwheel < 1 )
+			throw new IllegalArgumentException( "the tick and the number of ticks must be positive" );
+		int n = 1;
+		while ( n < ticksperwheel )
+			n <<= 1;
+		this.ticknanos = Math.max( 1, unit.toNanos( tick ) );
+		this.mask = n - 1;
+		this.items = new Object[ n ][];
+		this.deadlines = new long[ n ][];
+		this.sizes = new int[ n ];
+		this.origin = System.nanoTime();
+		this.lasttick = -1;
+	}
+
+	/**
+	 * Schedules <var>item</var> to be handed out by {@link #expire(long, Collection)} once <var>deadline</var>, a value of {@link System#nanoTime()}, has passed.<br>
+	 * An item may be scheduled several times.
+	 */
+	public void schedule( T item, long deadline ) {
+		long tick = Math.max( ( deadline - origin ) / ticknanos, lasttick + 1 );
+		int b = (int) ( tick & mask );
+		int n = sizes[ b ];
+		if( items[ b ] == null ) {
+			items[ b ] = new Object[ 4 ];
+			deadlines[ b ] = new long[ 4 ];
+		} else if( n == items[ b ].length ) {
+			items[ b ] = Arrays.copyOf( items[ b ], n * 2 );
+			deadlines[ b ] = Arrays.copyOf( deadlines[ b ], n * 2 );
+		}
+		items[ b ][ n ] = item;
+		deadlines[ b ][ n ] = deadline;
+		sizes[ b ] = n + 1;
+		size++;
+	}
+
+	/**
+	 * Removes the items whose deadline passed by <var>now</var> and adds them to <var>expired</var>.
+	 *
+	 * @return the number of expired items
+	 */
+	@SuppressWarnings("unchecked")
+	public int expire( long now, Collection<? super T> expired ) {
+		// a tick is only expired once it has passed completely, so that all of its items are due
+		long current = ( now - origin ) / ticknanos - 1;
+		if( current <= lasttick )
+			return 0;
+		long first = Math.max( lasttick + 1, current - mask );
+		int count = 0;
+		for( long tick = first ; tick <= current ; tick++ ) {
+			int b = (int) ( tick & mask );
+			int n = sizes[ b ];
+			if( n == 0 )
+				continue;
+			Object[] bucket = items[ b ];
+			long[] due = deadlines[ b ];
+			int kept = 0;
+			for( int i = 0 ; i < n ; i++ ) {
+				if( due[ i ] - now <= 0 ) {
+					expired.add( (T) bucket[ i ] );
+					count++;
+				} else {
+					bucket[ kept ] = bucket[ i ];
+					due[ kept ] = due[ i ];
+					kept++;
+				}
+			}
+			Arrays.fill( bucket, kept, n, null );
+			sizes[ b ] = kept;
+		}
+		lasttick = current;
+		size -= count;
+		return count;
+	}
+
+	/** Returns the number of scheduled items. */
+	public int size() {
+		return size;
+	}
+
+	public long getTick( TimeUnit unit ) {
+		return unit.convert( ticknanos, TimeUnit.NANOSECONDS );
+	}
+}
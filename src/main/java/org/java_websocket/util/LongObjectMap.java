@@ -0,0 +1,186 @@
+package org.java_websocket.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A hash map from primitive, non zero <code>long</code> keys to objects which can be read without locking and without allocation.<br>
+ * Entries are kept in a single open addressing table with linear probing. Writers are serialized by the map's monitor, readers only perform volatile reads on the table and never block.<br>
+ * Removed entries leave their key behind with a null value, so that probing readers never miss entries which were moved. These tombstones are dropped when the table is rebuilt, which happens once live entries and tombstones together fill half of it. The rebuilt table is filled completely before it replaces the old one.<br>
+ * The map is meant for keys which are not reused once removed, like the ids of connections. Removing and re-adding the same key reuses its slot.
+ */
+public class LongObjectMap<V> {
+
+	/** Visits the entries of a map without boxing their keys; see {@link LongObjectMap#forEach(Visitor)}. */
+	public interface Visitor<V> {
+		public void visit( long key, V value );
+	}
+
+	private static class Table<V> {
+		final AtomicLongArray keys;
+		final AtomicReferenceArray<V> values;
+		final int mask;
+		/** slots whose key is set, including the removed ones */
+		int used;
+
+		Table( int capacity ) {
+			keys = new AtomicLongArray( capacity );
+			values = new AtomicReferenceArray<V>( capacity );
+			mask = capacity - 1;
+		}
+	}
+
+	private volatile Table<V> table;
+	private volatile int size = 0;
+
+	public LongObjectMap() {
+		this( 16 );
+	}
+
+	/**
+	 * @param expectedsize
+	 *            the number of entries the map should hold before it has to grow
+	 */
+	public LongObjectMap( int expectedsize ) {
+		table = new Table<V>( capacityFor( expectedsize ) );
+	}
+
+	/** @return a power of two which is at least twice the given number of entries */
+	private static int capacityFor( int entries ) {
+		int capacity = 16;
+		while ( capacity < 2L * entries && capacity < 1 << 30 )
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private static int slot( long key, int mask ) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) ( h ^ ( h >>> 32 ) ) & mask;
+	}
+
+	/** Returns the value of <var>key</var> or null if there is none. */
+	public V get( long key ) {
+		Table<V> t = table;
+		int i = slot( key, t.mask );
+		while ( true ) {
+			long k = t.keys.get( i );
+			if( k == key )
+				return t.values.get( i );
+			if( k == 0 )
+				return null;
+			i = ( i + 1 ) & t.mask;
+		}
+	}
+
+	/**
+	 * Associates <var>value</var> with <var>key</var>.
+	 *
+	 * @return the previous value of <var>key</var> or null
+	 */
+	public synchronized V put( long key, V value ) {
+		if( key == 0 )
+			throw new IllegalArgumentException( "the key 0 is reserved" );
+		if( value == null )
+			throw new IllegalArgumentException( "values must not be null" );
+		Table<V> t = table;
+		int i = slot( key, t.mask );
+		long k;
+		while ( ( k = t.keys.get( i ) ) != 0 ) {
+			if( k == key ) {
+				V previous = t.values.getAndSet( i, value );
+				if( previous == null )
+					size++;
+				return previous;
+			}
+			i = ( i + 1 ) & t.mask;
+		}
+		if( 2 * ( t.used + 1 ) > t.mask + 1 ) {
+			rebuild();
+			return put( key, value );
+		}
+		// the value is set first, so that readers which find the key also find its value
+		t.values.set( i, value );
+		t.keys.set( i, key );
+		t.used++;
+		size++;
+		return null;
+	}
+
+	/**
+	 * Removes the value of <var>key</var>.
+	 *
+	 * @return the removed value or null if there was none
+	 */
+	public synchronized V remove( long key ) {
+		Table<V> t = table;
+		int i = slot( key, t.mask );
+		long k;
+		while ( ( k = t.keys.get( i ) ) != 0 ) {
+			if( k == key ) {
+				V previous = t.values.getAndSet( i, null );
+				if( previous != null )
+					size--;
+				return previous;
+			}
+			i = ( i + 1 ) & t.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the value of <var>key</var> if it is <var>value</var>.
+	 *
+	 * @return whether the entry has been removed
+	 */
+	public synchronized boolean remove( long key, V value ) {
+		if( get( key ) != value )
+			return false;
+		return remove( key ) != null;
+	}
+
+	/** Replaces the table by one which is big enough for the current entries and contains no tombstones. */
+	private void rebuild() {
+		Table<V> old = table;
+		// room for half as many entries again, so that a table of live entries grows and one of tombstones shrinks
+		Table<V> t = new Table<V>( capacityFor( ( size + 1 ) * 3 / 2 ) );
+		for( int i = 0 ; i <= old.mask ; i++ ) {
+			V v = old.values.get( i );
+			if( v == null )
+				continue;
+			long key = old.keys.get( i );
+			int j = slot( key, t.mask );
+			while ( t.keys.get( j ) != 0 )
+				j = ( j + 1 ) & t.mask;
+			t.values.set( j, v );
+			t.keys.set( j, key );
+			t.used++;
+		}
+		table = t;
+	}
+
+	/**
+	 * Calls <var>visitor</var> for every entry.<br>
+	 * Runs without locking. Entries which are added or removed meanwhile may or may not be visited.
+	 */
+	public void forEach( Visitor<? super V> visitor ) {
+		Table<V> t = table;
+		for( int i = 0 ; i <= t.mask ; i++ ) {
+			V v = t.values.get( i );
+			if( v != null )
+				visitor.visit( t.keys.get( i ), v );
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Returns the number of slots of the current table. */
+	public int capacity() {
+		return table.mask + 1;
+	}
+}
@@ -0,0 +1,106 @@
+package org.java_websocket.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free and allocation-free queue for any number of producer and consumer threads.<br>
+ * Every slot carries a sequence number which tells producers and consumers whether the slot is theirs to fill or to empty, so that both sides only contend on a single compare-and-set.<br>
+ * Since consumers claim their elements with a compare-and-set too, other threads may take elements away from the owner of the queue.<br>
+ * {@link #offer(Object)} returns false instead of blocking when the queue is full.<br>
+ * It is not a {@link java.util.Collection} since it can not be iterated or have elements removed from the middle; it only offers the operations of a handoff.
+ */
+public class MpmcArrayQueue<E> {
+
+	private final AtomicReferenceArray<E> buffer;
+	private final AtomicLongArray sequences;
+	private final int mask;
+
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            will be rounded up to the next power of two, but at least 2 since with a single slot a filled slot would look free to the next producer
+	 */
+	public MpmcArrayQueue( int capacity ) {
+		if( capacity < 1 )
+			throw new IllegalArgumentException( "capacity must be positive" );
+		int size = 2;
+		while ( size < capacity )
+			size <<= 1;
+		buffer = new AtomicReferenceArray<E>( size );
+		sequences = new AtomicLongArray( size );
+		for( int i = 0 ; i < size ; i++ ) {
+			sequences.set( i, i );
+		}
+		mask = size - 1;
+	}
+
+	public boolean offer( E e ) {
+		if( e == null )
+			throw new NullPointerException();
+		while ( true ) {
+			long t = tail.get();
+			int index = (int) t & mask;
+			long dif = sequences.get( index ) - t;
+			if( dif == 0 ) {
+				if( tail.compareAndSet( t, t + 1 ) ) {
+					buffer.lazySet( index, e );
+					sequences.set( index, t + 1 );
+					return true;
+				}
+			} else if( dif < 0 ) {
+				return false; // the slot has not yet been emptied by a consumer
+			}
+		}
+	}
+
+	public E poll() {
+		while ( true ) {
+			long h = head.get();
+			int index = (int) h & mask;
+			long dif = sequences.get( index ) - ( h + 1 );
+			if( dif == 0 ) {
+				if( head.compareAndSet( h, h + 1 ) ) {
+					E e = buffer.get( index );
+					buffer.lazySet( index, null );
+					sequences.set( index, h + mask + 1 );
+					return e;
+				}
+			} else if( dif < 0 ) {
+				return null; // empty or the producer has not yet finished writing the slot
+			}
+			// an other consumer took the element, try the next one
+		}
+	}
+
+	/** Returns the head element at the time of the call. It may already have been taken by an other consumer when this method returns. */
+	public E peek() {
+		long h = head.get();
+		int index = (int) h & mask;
+		if( sequences.get( index ) != h + 1 )
+			return null;
+		return buffer.get( index );
+	}
+
+	public int size() {
+		long size = tail.get() - head.get();
+		return size < 0 ? 0 : (int) size;
+	}
+
+	public boolean isEmpty() {
+		return tail.get() - head.get() <= 0;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/** Describes the queue by its size, not its elements, which can not be listed consistently while other threads use the queue. */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + capacity() + "]";
+	}
+}
@@ -0,0 +1,112 @@
+package org.java_websocket.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks given to it one after another in the order they have been submitted, on the threads of an other executor.<br>
+ * Many serial executors can share a single pool. Each of them occupies at most one of its threads at a time, so the tasks of one serial executor never run concurrently while those of different ones run in parallel. That makes it a mailbox which keeps e.g. the callbacks of a connection in order without pinning the connection to a thread.<br>
+ * A serial executor runs a limited number of tasks before it resubmits itself, so that a busy one does not keep a thread of the pool from others which are waiting. If the pool rejects it, the tasks are run by the thread which submitted them.<br>
+ * RuntimeExceptions thrown by tasks are passed to the uncaught exception handler of the running thread and do not stop the following tasks.
+ */
+public class SerialExecutor implements Executor {
+
+	/** The number of tasks which are run before the executor gives its thread back to the pool */
+	private static final int BATCH = 16;
+
+	private final Executor executor;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	/** The number of tasks which have been submitted and not yet completed. The thread which raises it from 0 starts the drain. */
+	private final AtomicInteger pending = new AtomicInteger( 0 );
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	public SerialExecutor( Executor executor ) {
+		if( executor == null )
+			throw new IllegalArgumentException( "the executor must not be null" );
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute( Runnable task ) {
+		if( task == null )
+			throw new NullPointerException();
+		tasks.add( task );
+		if( pending.getAndIncrement() == 0 ) {
+			try {
+				executor.execute( drain );
+			} catch ( RejectedExecutionException e ) {
+				drain();
+			}
+		}
+	}
+
+	private void drain() {
+		int budget = BATCH;
+		while ( true ) {
+			Runnable task = tasks.poll();
+			try {
+				task.run();
+			} catch ( RuntimeException e ) {
+				Thread t = Thread.currentThread();
+				t.getUncaughtExceptionHandler().uncaughtException( t, e );
+			} catch ( Error e ) {
+				// the error is passed on, but the remaining tasks must not be left behind
+				boolean more = pending.decrementAndGet() > 0;
+				try {
+					afterExecute( task );
+				} finally {
+					if( more )
+						resubmit();
+				}
+				throw e;
+			}
+			int left = pending.decrementAndGet();
+			afterExecute( task );
+			if( left == 0 )
+				return;
+			if( --budget == 0 ) {
+				try {
+					executor.execute( drain );
+					return;
+				} catch ( RejectedExecutionException e ) {
+					budget = BATCH;
+				}
+			}
+		}
+	}
+
+	/** Hands the remaining tasks to the pool after a task failed with an Error, or runs them right away if the pool rejects them. */
+	private void resubmit() {
+		try {
+			executor.execute( drain );
+		} catch ( RejectedExecutionException r ) {
+			try {
+				drain();
+			} catch ( Error e ) {
+				// the first error is the one which is passed on
+				Thread t = Thread.currentThread();
+				t.getUncaughtExceptionHandler().uncaughtException( t, e );
+			}
+		}
+	}
+
+	/**
+	 * Called after <var>task</var> has completed and has been subtracted from {@link #getPending()}.<br>
+	 * Since the next task may be started as soon as that happened, this method may run concurrently with it. It must not throw.
+	 */
+	protected void afterExecute( Runnable task ) {
+	}
+
+	/** Returns the number of tasks which have been submitted and not yet completed, including the one which is running. */
+	public int getPending() {
+		return pending.get();
+	}
+}
@@ -0,0 +1,98 @@
+package org.java_websocket.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free and allocation-free queue for exactly one producer thread and one consumer thread.<br>
+ * The producer and consumer may change over time as long as the change itself is properly synchronized.<br>
+ * {@link #offer(Object)} returns false instead of blocking when the queue is full.<br>
+ * It is not a {@link java.util.Collection} since it can not be iterated or have elements removed from the middle; it only offers the operations of a handoff.
+ */
+public class SpscArrayQueue<E> {
+
+	private final AtomicReferenceArray<E> buffer;
+	private final int mask;
+
+	/** index of the next element to poll, only written by the consumer */
+	private final AtomicLong head = new AtomicLong();
+	/** index of the next free slot, only written by the producer */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** the producers last read of {@link #head} */
+	private long headcache;
+	/** the consumers last read of {@link #tail} */
+	private long tailcache;
+
+	/**
+	 * @param capacity
+	 *            will be rounded up to the next power of two
+	 */
+	public SpscArrayQueue( int capacity ) {
+		if( capacity < 1 )
+			throw new IllegalArgumentException( "capacity must be positive" );
+		int size = 1;
+		while ( size < capacity )
+			size <<= 1;
+		buffer = new AtomicReferenceArray<E>( size );
+		mask = size - 1;
+	}
+
+	public boolean offer( E e ) {
+		if( e == null )
+			throw new NullPointerException();
+		long t = tail.get();
+		if( t - headcache > mask ) {
+			headcache = head.get();
+			if( t - headcache > mask )
+				return false;
+		}
+		buffer.lazySet( (int) t & mask, e );
+		tail.lazySet( t + 1 );
+		return true;
+	}
+
+	public E poll() {
+		long h = head.get();
+		if( h >= tailcache ) {
+			tailcache = tail.get();
+			if( h >= tailcache )
+				return null;
+		}
+		int index = (int) h & mask;
+		E e = buffer.get( index );
+		buffer.lazySet( index, null );
+		// a full volatile write so that a consumer which checks a flag of the producer afterwards can not miss it
+		head.set( h + 1 );
+		return e;
+	}
+
+	public E peek() {
+		long h = head.get();
+		if( h >= tail.get() )
+			return null;
+		return buffer.get( (int) h & mask );
+	}
+
+	public int size() {
+		return (int) ( tail.get() - head.get() );
+	}
+
+	public boolean isEmpty() {
+		return head.get() >= tail.get();
+	}
+
+	public boolean isFull() {
+		return tail.get() - head.get() > mask;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/** Describes the queue by its size, not its elements, which can not be listed consistently while other threads use the queue. */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + capacity() + "]";
+	}
+}
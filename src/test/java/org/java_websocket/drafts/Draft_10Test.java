@@ -0,0 +1,239 @@
+package org.java_websocket.drafts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.Framedata.Opcode;
+import org.java_websocket.framing.FramedataImpl1;
+import org.junit.Test;
+
+public class Draft_10Test {
+
+	private final Random random = new Random( 42 );
+
+	private byte[] payload( int size ) {
+		byte[] payload = new byte[ size ];
+		random.nextBytes( payload );
+		return payload;
+	}
+
+	/** Returns the bytes of a frame. Masked frames are created as a client sends them, unmasked ones as a server does. */
+	private static byte[] frame( Opcode opcode, boolean fin, byte[] payload, boolean masked ) throws Exception {
+		Draft_17 sender = new Draft_17();
+		if( masked )
+			sender.setParseMode( Role.CLIENT );
+		FramedataImpl1 frame = new FramedataImpl1( opcode );
+		frame.setFin( fin );
+		frame.setPayload( ByteBuffer.wrap( payload ) );
+		ByteBuffer buffer = sender.createBinaryFrame( frame );
+		byte[] bytes = new byte[ buffer.remaining() ];
+		buffer.get( bytes );
+		return bytes;
+	}
+
+	/** Returns the bytes of a masked binary frame, as a client sends it. */
+	private static byte[] maskedFrame( byte[] payload ) throws Exception {
+		return frame( Opcode.BINARY, true, payload, true );
+	}
+
+	private static byte[] concat( byte[]... parts ) {
+		int length = 0;
+		for( byte[] part : parts )
+			length += part.length;
+		byte[] all = new byte[ length ];
+		int offset = 0;
+		for( byte[] part : parts ) {
+			System.arraycopy( part, 0, all, offset, part.length );
+			offset += part.length;
+		}
+		return all;
+	}
+
+	private static byte[] bytes( ByteBuffer buffer ) {
+		byte[] bytes = new byte[ buffer.remaining() ];
+		buffer.duplicate().get( bytes );
+		return bytes;
+	}
+
+	private static ByteBuffer buffer( byte[] bytes, boolean direct ) {
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect( bytes.length ) : ByteBuffer.allocate( bytes.length );
+		buffer.put( bytes );
+		buffer.flip();
+		return buffer;
+	}
+
+	@Test
+	public void maskMatchesBytewiseXor() {
+		int[] keys = { 0x12345678, 0x80FF0001, random.nextInt() };
+		for( int key : keys ) {
+			byte[] keybytes = { (byte) ( key >>> 24 ), (byte) ( key >>> 16 ), (byte) ( key >>> 8 ), (byte) key };
+			for( ByteOrder order : new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+				for( boolean direct : new boolean[]{ false, true } ) {
+					for( int offset = 0 ; offset < 8 ; offset++ ) {
+						for( int length = 0 ; length <= 20 ; length++ ) {
+							byte[] original = payload( offset + length + 8 );
+							byte[] expected = original.clone();
+							for( int i = 0 ; i < length ; i++ )
+								expected[ offset + i ] ^= keybytes[ i % 4 ];
+
+							ByteBuffer buffer = buffer( original, direct );
+							buffer.order( order );
+							buffer.position( 3 );
+							Draft_10.mask( buffer, offset, length, key );
+							String message = "key " + Integer.toHexString( key ) + " " + order + ( direct ? " direct" : " heap" ) + " offset " + offset + " length " + length;
+							assertEquals( message, 3, buffer.position() );
+							buffer.rewind();
+							assertArrayEquals( message, expected, bytes( buffer ) );
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void translateFrameLeavesSourceBufferUnchanged() throws Exception {
+		byte[] first = payload( 300 );
+		byte[] second = payload( 7 );
+		byte[] stream = concat( maskedFrame( first ), maskedFrame( second ) );
+		for( boolean direct : new boolean[]{ false, true } ) {
+			ByteBuffer source = buffer( stream, direct );
+			List<Framedata> frames = new Draft_17().translateFrame( source );
+			assertEquals( 2, frames.size() );
+			assertEquals( stream.length, source.position() );
+			source.rewind();
+			assertArrayEquals( "the masked bytes must not be unmasked in place", stream, bytes( source ) );
+			assertArrayEquals( first, bytes( frames.get( 0 ).getPayloadData() ) );
+			assertArrayEquals( second, bytes( frames.get( 1 ).getPayloadData() ) );
+		}
+	}
+
+	@Test
+	public void translateFramePayloadsSurviveReuseOfSourceBuffer() throws Exception {
+		byte[] first = payload( 125 );
+		byte[] second = payload( 1000 );
+		byte[] stream = concat( maskedFrame( first ), maskedFrame( second ) );
+		for( boolean direct : new boolean[]{ false, true } ) {
+			ByteBuffer source = buffer( stream, direct );
+			Draft_17 draft = new Draft_17();
+			List<Framedata> frames = draft.translateFrame( source );
+
+			// the buffer is reused for the next read, like a receive buffer
+			source.clear();
+			byte[] next = maskedFrame( payload( stream.length - 14 ) );
+			source.put( next );
+			source.flip();
+			draft.translateFrame( source );
+			source.clear();
+			while ( source.hasRemaining() )
+				source.put( (byte) 0 );
+
+			assertArrayEquals( first, bytes( frames.get( 0 ).getPayloadData() ) );
+			assertArrayEquals( second, bytes( frames.get( 1 ).getPayloadData() ) );
+			// payloads are buffers of their own which the caller may keep and change
+			ByteBuffer payload = frames.get( 1 ).getPayloadData();
+			payload.array()[ payload.arrayOffset() ] ^= 1;
+		}
+	}
+
+	@Test
+	public void translateSingleFrameCopiesPayload() throws Exception {
+		byte[] payload = payload( 70000 );
+		byte[] frame = maskedFrame( payload );
+		ByteBuffer source = buffer( frame, true );
+		Framedata parsed = new Draft_17().translateSingleFrame( source );
+		source.rewind();
+		assertArrayEquals( frame, bytes( source ) );
+		Arrays.fill( frame, (byte) 0 );
+		source.put( frame );
+		assertArrayEquals( payload, bytes( parsed.getPayloadData() ) );
+	}
+
+	@Test
+	public void translateFrameParsesFramesSplitAtEveryByte() throws Exception {
+		Opcode[] opcodes = { Opcode.BINARY, Opcode.PING, Opcode.BINARY, Opcode.CONTINUOUS, Opcode.CONTINUOUS, Opcode.PONG };
+		boolean[] fins = { true, true, false, false, true, true };
+		boolean[] masked = { true, true, true, false, true, false };
+		// empty, short, the longest with a 7 bit length, the shortest with a 16 bit length and a longer one
+		byte[][] payloads = { payload( 0 ), payload( 1 ), payload( 125 ), payload( 126 ), payload( 300 ), payload( 5 ) };
+		byte[][] frames = new byte[ payloads.length ][];
+		for( int i = 0 ; i < payloads.length ; i++ )
+			frames[ i ] = frame( opcodes[ i ], fins[ i ], payloads[ i ], masked[ i ] );
+		byte[] stream = concat( frames );
+
+		for( int split = 0 ; split <= stream.length ; split++ ) {
+			Draft_17 draft = new Draft_17();
+			boolean direct = split % 2 == 1;
+			List<Framedata> parsed = new ArrayList<Framedata>();
+			parsed.addAll( draft.translateFrame( buffer( Arrays.copyOfRange( stream, 0, split ), direct ) ) );
+			parsed.addAll( draft.translateFrame( buffer( Arrays.copyOfRange( stream, split, stream.length ), direct ) ) );
+			assertEquals( "split at " + split, payloads.length, parsed.size() );
+			for( int i = 0 ; i < payloads.length ; i++ ) {
+				Framedata frame = parsed.get( i );
+				assertEquals( "split at " + split, opcodes[ i ], frame.getOpcode() );
+				assertEquals( "split at " + split, fins[ i ], frame.isFin() );
+				assertArrayEquals( "split at " + split + ", frame " + i, payloads[ i ], bytes( frame.getPayloadData() ) );
+			}
+		}
+	}
+
+	@Test
+	public void translateFrameParsesFramesFedByteByByte() throws Exception {
+		// a 64 bit length, and a masked payload which does not start at a multiple of four in the pieces
+		byte[] large = payload( 70000 );
+		byte[] small = payload( 3 );
+		byte[] first = maskedFrame( large );
+		byte[] stream = concat( first, maskedFrame( small ) );
+		Draft_17 draft = new Draft_17();
+		List<Framedata> parsed = new ArrayList<Framedata>();
+		for( int i = 0 ; i < stream.length ; i++ ) {
+			List<Framedata> frames = draft.translateFrame( ByteBuffer.wrap( stream, i, 1 ) );
+			if( i == first.length - 1 || i == stream.length - 1 )
+				assertEquals( "byte " + i, 1, frames.size() );
+			else
+				assertTrue( "byte " + i, frames.isEmpty() );
+			parsed.addAll( frames );
+		}
+		assertArrayEquals( large, bytes( parsed.get( 0 ).getPayloadData() ) );
+		assertArrayEquals( small, bytes( parsed.get( 1 ).getPayloadData() ) );
+	}
+
+	@Test
+	public void translateSingleFrameReturnsNullForPartialFrame() throws Exception {
+		byte[] payload = payload( 200 );
+		byte[] frame = maskedFrame( payload );
+		Draft_17 draft = new Draft_17();
+		// within the header, within the extended length, within the mask key and within the payload
+		int[] splits = { 1, 3, 6, 100 };
+		int start = 0;
+		for( int split : splits ) {
+			ByteBuffer piece = ByteBuffer.wrap( frame, start, split - start );
+			assertNull( "split at " + split, draft.translateSingleFrame( piece ) );
+			assertFalse( "the bytes of a partial frame are consumed", piece.hasRemaining() );
+			start = split;
+		}
+		ByteBuffer rest = ByteBuffer.wrap( concat( Arrays.copyOfRange( frame, start, frame.length ), maskedFrame( payload( 2 ) ) ) );
+		Framedata parsed = draft.translateSingleFrame( rest );
+		assertArrayEquals( payload, bytes( parsed.getPayloadData() ) );
+		assertEquals( "only the completed frame is consumed", frame.length - start, rest.position() );
+		assertEquals( 2, draft.translateSingleFrame( rest ).getPayloadData().remaining() );
+		assertNull( draft.translateSingleFrame( rest ) );
+
+		// reset drops a partial frame
+		assertNull( draft.translateSingleFrame( ByteBuffer.wrap( frame, 0, 10 ) ) );
+		draft.reset();
+		assertArrayEquals( payload, bytes( draft.translateSingleFrame( ByteBuffer.wrap( frame ) ).getPayloadData() ) );
+	}
+}
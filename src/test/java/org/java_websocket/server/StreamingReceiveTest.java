@@ -0,0 +1,231 @@
+package org.java_websocket.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.Framedata.Opcode;
+import org.java_websocket.framing.FramedataImpl1;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.Test;
+
+/**
+ * Sends fragmented binary messages with control frames between the fragments to a server which streams binary messages and checks the chunks, the <var>last</var> flags and the order of the callbacks.
+ */
+public class StreamingReceiveTest {
+
+	/** A chunk as it was passed to {@link WebSocketServer#onMessageChunk(WebSocket, ByteBuffer, boolean)} */
+	private static class Chunk {
+		final byte[] data;
+		final boolean last;
+		final boolean readonly;
+
+		Chunk( ByteBuffer chunk , boolean last ) {
+			data = new byte[ chunk.remaining() ];
+			chunk.duplicate().get( data );
+			this.last = last;
+			this.readonly = chunk.isReadOnly();
+		}
+	}
+
+	private static class RecordingServer extends WebSocketServer {
+		/** The chunks, as well as the pings, pongs and text messages as strings, in the order they were passed on */
+		final List<Object> events = new ArrayList<Object>();
+		final CountDownLatch closed = new CountDownLatch( 1 );
+		final List<Exception> errors = new ArrayList<Exception>();
+
+		RecordingServer() {
+			super( new InetSocketAddress( "127.0.0.1", 0 ), 1 );
+		}
+
+		@Override
+		public void onMessageChunk( WebSocket conn, ByteBuffer chunk, boolean last ) {
+			synchronized ( events ) {
+				events.add( new Chunk( chunk, last ) );
+			}
+		}
+
+		@Override
+		public void onMessage( WebSocket conn, ByteBuffer message ) {
+			synchronized ( events ) {
+				events.add( "whole binary message" );
+			}
+		}
+
+		@Override
+		public void onWebsocketPing( WebSocket conn, Framedata f ) {
+			synchronized ( events ) {
+				events.add( "ping " + new String( bytes( f.getPayloadData() ) ) );
+			}
+			super.onWebsocketPing( conn, f );
+		}
+
+		@Override
+		public void onWebsocketPong( WebSocket conn, Framedata f ) {
+			synchronized ( events ) {
+				events.add( "pong " + new String( bytes( f.getPayloadData() ) ) );
+			}
+		}
+
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+			synchronized ( events ) {
+				events.add( "text " + message );
+			}
+		}
+
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+			closed.countDown();
+		}
+
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+			synchronized ( errors ) {
+				errors.add( ex );
+			}
+		}
+	}
+
+	private static class Client extends WebSocketClient {
+		Client( URI uri ) {
+			super( uri );
+		}
+
+		@Override
+		public void onOpen( ServerHandshake handshakedata ) {
+		}
+
+		@Override
+		public void onMessage( String message ) {
+		}
+
+		@Override
+		public void onClose( int code, String reason, boolean remote ) {
+		}
+
+		@Override
+		public void onError( Exception ex ) {
+		}
+	}
+
+	private static byte[] bytes( ByteBuffer buffer ) {
+		byte[] bytes = new byte[ buffer.remaining() ];
+		buffer.duplicate().get( bytes );
+		return bytes;
+	}
+
+	private static byte[] random( int size, long seed ) {
+		byte[] bytes = new byte[ size ];
+		new Random( seed ).nextBytes( bytes );
+		return bytes;
+	}
+
+	private static Framedata control( Opcode opcode, String payload ) throws Exception {
+		FramedataImpl1 frame = new FramedataImpl1( opcode );
+		frame.setFin( true );
+		frame.setPayload( ByteBuffer.wrap( payload.getBytes( "US-ASCII" ) ) );
+		return frame;
+	}
+
+	@Test
+	public void streamsChunksWithInterleavedControlFrames() throws Exception {
+		run( false );
+	}
+
+	@Test
+	public void streamsZeroCopyChunksWithInterleavedControlFrames() throws Exception {
+		run( true );
+	}
+
+	private void run( boolean zerocopy ) throws Exception {
+		byte[] first = random( 1000, 1 );
+		byte[] second = random( 3 * WebSocketImpl.RCVBUF + 17, 2 );
+		byte[] third = random( 10, 3 );
+		byte[] single = random( 50000, 4 );
+
+		RecordingServer server = new RecordingServer();
+		server.setStreamingMessages( true );
+		server.setZeroCopyPayloads( zerocopy );
+		server.start();
+		try {
+			while ( server.getPort() <= 0 )
+				Thread.sleep( 10 );
+			Client client = new Client( new URI( "ws://127.0.0.1:" + server.getPort() ) );
+			assertTrue( client.connectBlocking() );
+			WebSocket conn = client.getConnection();
+			conn.sendFragmentedFrame( Opcode.BINARY, ByteBuffer.wrap( first ), false );
+			conn.sendFrame( control( Opcode.PING, "a" ) );
+			conn.sendFragmentedFrame( Opcode.BINARY, ByteBuffer.wrap( second ), false );
+			conn.sendFrame( control( Opcode.PONG, "b" ) );
+			conn.sendFragmentedFrame( Opcode.BINARY, ByteBuffer.wrap( third ), true );
+			conn.send( "between" );
+			conn.send( single );
+			client.closeBlocking();
+			assertTrue( "the server did not see the close", server.closed.await( 10, TimeUnit.SECONDS ) );
+		} finally {
+			server.stop( 1000 );
+		}
+		assertTrue( "errors: " + server.errors, server.errors.isEmpty() );
+
+		List<Object> actual = new ArrayList<Object>();
+		List<byte[]> messages = new ArrayList<byte[]>();
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		List<Object> events;
+		synchronized ( server.events ) {
+			events = new ArrayList<Object>( server.events );
+		}
+		for( Object event : events ) {
+			if( event instanceof Chunk ) {
+				Chunk chunk = (Chunk) event;
+				assertTrue( "chunk of " + chunk.data.length + " bytes", chunk.data.length <= WebSocketImpl.RCVBUF );
+				if( !zerocopy )
+					assertFalse( "chunks are copies unless they are zero copy", chunk.readonly );
+				message.write( chunk.data );
+				if( chunk.last ) {
+					messages.add( message.toByteArray() );
+					actual.add( "message of " + message.size() + " bytes" );
+					message.reset();
+				}
+			} else {
+				// the control frames and the text message must arrive where they were sent between the fragments
+				actual.add( event + " after " + message.size() + " bytes" );
+			}
+		}
+		assertEquals( 0, message.size() );
+		List<Object> expected = new ArrayList<Object>();
+		expected.add( "ping a after " + first.length + " bytes" );
+		expected.add( "pong b after " + ( first.length + second.length ) + " bytes" );
+		expected.add( "message of " + ( first.length + second.length + third.length ) + " bytes" );
+		expected.add( "text between after 0 bytes" );
+		expected.add( "message of " + single.length + " bytes" );
+		assertEquals( expected, actual );
+
+		ByteArrayOutputStream fragmented = new ByteArrayOutputStream();
+		fragmented.write( first );
+		fragmented.write( second );
+		fragmented.write( third );
+		assertArrayEquals( fragmented.toByteArray(), messages.get( 0 ) );
+		assertArrayEquals( single, messages.get( 1 ) );
+	}
+}